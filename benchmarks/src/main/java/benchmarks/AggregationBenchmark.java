@@ -0,0 +1,62 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import remote.AdjRibIn;
+import remote.Attributes;
+import remote.Prefix;
+import remote.Route;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks aggregation under churn of adjacent prefixes. The table holds pairs of sibling /24s with equal
+ * attributes, which aggregate to /23s. Each operation withdraws one /24 of a pair, disaggregating its /23, then
+ * announces it again, aggregating the pair back.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AggregationBenchmark {
+    private static final String NEIGHBOR = "10.0.0.2";
+
+    @Param({"1000", "100000"})
+    public int pairCount;
+
+    private AdjRibIn adjRibIn;
+    private Route[] churnedRoutes;
+    private final Set<Prefix> changedPrefixes = new HashSet<>();
+    private int next;
+
+    @Setup
+    public void setUp() {
+        adjRibIn = new AdjRibIn(NEIGHBOR);
+        churnedRoutes = new Route[pairCount];
+        Random random = new Random(3700);
+        for (int i = 0; i < pairCount; i++) {
+            //Pairs are spread over the address space, so no two pairs aggregate with each other.
+            int network = (1 << 24) + i * 1024;
+            Attributes attributes = Prefixes.attributes(random);
+            adjRibIn.announce(new Route(NEIGHBOR, new Prefix(network, 24), attributes), changedPrefixes);
+            churnedRoutes[i] = new Route(NEIGHBOR, new Prefix(network + 256, 24), attributes);
+            adjRibIn.announce(churnedRoutes[i], changedPrefixes);
+        }
+        changedPrefixes.clear();
+    }
+
+    @Benchmark
+    public Set<Prefix> withdrawAndReannounce() {
+        Route route = churnedRoutes[next];
+        next = (next + 1) % churnedRoutes.length;
+        changedPrefixes.clear();
+        adjRibIn.withdraw(List.of(route.prefix), changedPrefixes);
+        adjRibIn.announce(route, changedPrefixes);
+        return changedPrefixes;
+    }
+}
@@ -0,0 +1,91 @@
+package benchmarks;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import json.GsonTypeAdapters;
+import json.MessageCodec;
+import messages.Message;
+import messages.TableMessage;
+import messages.UpdateMessage;
+import org.openjdk.jmh.annotations.*;
+import remote.Prefix;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks encoding and decoding update and table messages, with the Gson type adapters and with the streaming
+ * MessageCodec the router uses.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+    private static final String UPDATE = "{\"type\": \"update\", \"src\": \"192.168.0.2\", \"dst\": \"192.168.0.1\", \"msg\": "
+            + "{\"network\": \"192.168.0.0\", \"netmask\": \"255.255.255.0\", \"localpref\": 100, \"ASPath\": [1, 2, 3], "
+            + "\"origin\": \"EGP\", \"selfOrigin\": true}}";
+
+    @Param({"100"})
+    public int tableSize;
+
+    private Gson gson;
+    private UpdateMessage update;
+    private TableMessage table;
+    private ByteBuffer updateBytes;
+    private final ByteBuffer buffer = ByteBuffer.allocate(1 << 20);
+
+    @Setup
+    public void setUp() throws IOException {
+        //Registered the way the router registered them before it moved to MessageCodec.
+        GsonBuilder builder = new GsonBuilder();
+        builder.registerTypeAdapter(Message.class, new GsonTypeAdapters.MessageDeserializer());
+        builder.registerTypeAdapter(UpdateMessage.class, new GsonTypeAdapters.MessageSerializer());
+        builder.registerTypeAdapter(TableMessage.class, new GsonTypeAdapters.MessageSerializer());
+        gson = builder.create();
+
+        update = (UpdateMessage) gson.fromJson(UPDATE, Message.class);
+        Prefix[] prefixes = Prefixes.generate(tableSize);
+        table = new TableMessage("192.168.0.1", "192.168.0.2", Arrays.asList(Prefixes.routes(prefixes)));
+        updateBytes = ByteBuffer.wrap(UPDATE.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Benchmark
+    public Message gsonDecodeUpdate() {
+        return gson.fromJson(UPDATE, Message.class);
+    }
+
+    @Benchmark
+    public String gsonEncodeUpdate() {
+        return gson.toJson(update);
+    }
+
+    @Benchmark
+    public String gsonEncodeTable() {
+        return gson.toJson(table);
+    }
+
+    @Benchmark
+    public Message codecDecodeUpdate() throws IOException {
+        return MessageCodec.decode(updateBytes.duplicate());
+    }
+
+    @Benchmark
+    public ByteBuffer codecEncodeUpdate() throws IOException {
+        buffer.clear();
+        MessageCodec.encode(update, buffer);
+        return buffer;
+    }
+
+    @Benchmark
+    public ByteBuffer codecEncodeTable() throws IOException {
+        buffer.clear();
+        MessageCodec.encode(table, buffer);
+        return buffer;
+    }
+}
@@ -0,0 +1,47 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import remote.Prefix;
+import remote.PrefixTrie;
+import remote.Route;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks longest prefix match in the FIB, which every data message takes. This is the lookup
+ * Router.getBestRoute does against the published FIB snapshot.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LookupBenchmark {
+    private static final int ADDRESSES = 1 << 16;
+
+    @Param({"1000", "100000", "1000000"})
+    public int prefixCount;
+
+    private PrefixTrie<Route> fib;
+    private int[] addresses;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Prefix[] prefixes = Prefixes.generate(prefixCount);
+        Route[] routes = Prefixes.routes(prefixes);
+        PrefixTrie<Route> trie = new PrefixTrie<>();
+        for (Route route : routes) {
+            trie.put(route.prefix.network, route.prefix.length, route);
+        }
+        fib = trie.snapshot();
+        addresses = Prefixes.addresses(prefixes, ADDRESSES);
+    }
+
+    @Benchmark
+    public Route longestMatch() {
+        next = (next + 1) & (ADDRESSES - 1);
+        return fib.longestMatch(addresses[next]);
+    }
+}
@@ -0,0 +1,99 @@
+package benchmarks;
+
+import messages.UpdateMessage;
+import remote.Attributes;
+import remote.Prefix;
+import remote.Route;
+
+import java.util.*;
+
+/**
+ * Generates synthetic routing tables for the benchmarks. Prefix lengths follow the rough shape of the Internet
+ * routing table: over half are /24s, most of the rest are /16 to /23, and few are shorter than /16. Tables are
+ * generated from a fixed seed, so every run benchmarks the same table.
+ */
+public class Prefixes {
+    private static final long SEED = 3700;
+    //Weights of prefix lengths /8 to /24, in percent.
+    private static final int[] LENGTH_WEIGHTS = {1, 1, 1, 1, 1, 1, 1, 1, 3, 4, 5, 5, 6, 7, 10, 8, 44};
+
+    /**
+     * Generates distinct prefixes with lengths from /8 to /24.
+     *
+     * @param count the number of prefixes.
+     * @return the prefixes.
+     */
+    public static Prefix[] generate(int count) {
+        Random random = new Random(SEED);
+        Set<Prefix> prefixes = new LinkedHashSet<>();
+        while (prefixes.size() < count) {
+            int length = randomLength(random);
+            //Leave out 0/8 and the multicast and reserved space above 224/8.
+            int network = (1 + random.nextInt(223)) << 24 | random.nextInt(1 << 24);
+            prefixes.add(new Prefix(Prefix.mask(network, length), length));
+        }
+        return prefixes.toArray(new Prefix[0]);
+    }
+
+    /**
+     * Generates routes for prefixes, announced by one of a few peers with one of a few hundred attribute sets.
+     *
+     * @param prefixes the prefixes of the routes.
+     * @return the routes.
+     */
+    public static Route[] routes(Prefix[] prefixes) {
+        Random random = new Random(SEED);
+        Route[] routes = new Route[prefixes.length];
+        for (int i = 0; i < prefixes.length; i++) {
+            routes[i] = new Route("10.0." + random.nextInt(4) + ".2", prefixes[i], attributes(random));
+        }
+        return routes;
+    }
+
+    /**
+     * Returns one of a few hundred attribute sets.
+     *
+     * @param random the random number generator to pick the attributes with.
+     * @return the attributes.
+     */
+    public static Attributes attributes(Random random) {
+        int[] ASPath = new int[1 + random.nextInt(4)];
+        for (int i = 0; i < ASPath.length; i++) {
+            ASPath[i] = 1 + random.nextInt(4);
+        }
+        return Attributes.intern(100 + 50 * random.nextInt(2), random.nextBoolean(), ASPath,
+                UpdateMessage.UpdateParams.Origin.values()[random.nextInt(3)]);
+    }
+
+    /**
+     * Generates addresses to look up, three quarters of which fall within one of the prefixes.
+     *
+     * @param prefixes the prefixes.
+     * @param count    the number of addresses.
+     * @return the addresses.
+     */
+    public static int[] addresses(Prefix[] prefixes, int count) {
+        Random random = new Random(SEED);
+        int[] addresses = new int[count];
+        for (int i = 0; i < count; i++) {
+            if (random.nextInt(4) == 0) {
+                addresses[i] = random.nextInt();
+            } else {
+                Prefix prefix = prefixes[random.nextInt(prefixes.length)];
+                addresses[i] = prefix.network | (random.nextInt() & ~prefix.netmask());
+            }
+        }
+        return addresses;
+    }
+
+    private static int randomLength(Random random) {
+        int weight = random.nextInt(100);
+        for (int i = 0; i < LENGTH_WEIGHTS.length; i++) {
+            weight -= LENGTH_WEIGHTS[i];
+            if (weight < 0) {
+                return 8 + i;
+            }
+        }
+        return 24;
+    }
+}
@@ -0,0 +1,83 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import remote.AdjRibIn;
+import remote.Prefix;
+import remote.PrefixTrie;
+import remote.Route;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks a bulk withdrawal, as handled for a withdraw message listing many networks: the networks are withdrawn
+ * from the neighbor's Adj-RIB-In, then removed from the FIB. The table is restored before each withdrawal.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 20)
+@Measurement(iterations = 50)
+@Fork(1)
+public class WithdrawBenchmark {
+    private static final String NEIGHBOR = "10.0.0.2";
+
+    @Param({"100000"})
+    public int prefixCount;
+
+    @Param({"1000"})
+    public int withdrawnCount;
+
+    private Route[] routes;
+    private List<Prefix> withdrawnPrefixes;
+    private AdjRibIn adjRibIn;
+    private PrefixTrie<Route> fib;
+    private final Set<Prefix> changedPrefixes = new HashSet<>();
+
+    @Setup(Level.Trial)
+    public void generate() {
+        routes = Prefixes.routes(Prefixes.generate(prefixCount));
+        for (int i = 0; i < routes.length; i++) {
+            routes[i] = new Route(NEIGHBOR, routes[i].prefix, routes[i].attributes);
+        }
+        Prefix[] withdrawn = new Prefix[withdrawnCount];
+        for (int i = 0; i < withdrawnCount; i++) {
+            withdrawn[i] = routes[i * (prefixCount / withdrawnCount)].prefix;
+        }
+        withdrawnPrefixes = Arrays.asList(withdrawn);
+    }
+
+    @Setup(Level.Invocation)
+    public void announce() {
+        adjRibIn = new AdjRibIn(NEIGHBOR);
+        fib = new PrefixTrie<>();
+        for (Route route : routes) {
+            adjRibIn.announce(route, changedPrefixes);
+        }
+        for (Prefix prefix : changedPrefixes) {
+            List<Route> prefixRoutes = adjRibIn.getRoutes(prefix);
+            if (!prefixRoutes.isEmpty()) {
+                fib.put(prefix.network, prefix.length, prefixRoutes.get(0));
+            }
+        }
+        changedPrefixes.clear();
+    }
+
+    @Benchmark
+    public PrefixTrie<Route> withdraw() {
+        adjRibIn.withdraw(withdrawnPrefixes, changedPrefixes);
+        for (Prefix prefix : changedPrefixes) {
+            List<Route> prefixRoutes = adjRibIn.getRoutes(prefix);
+            if (prefixRoutes.isEmpty()) {
+                fib.remove(prefix.network, prefix.length);
+            } else {
+                fib.put(prefix.network, prefix.length, prefixRoutes.get(0));
+            }
+        }
+        changedPrefixes.clear();
+        return fib;
+    }
+}
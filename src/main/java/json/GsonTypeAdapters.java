@@ -19,13 +19,13 @@ public class GsonTypeAdapters {
         public JsonElement serialize(Route route, Type type, JsonSerializationContext jsonSerializationContext) {
             Gson gson = new Gson();
             JsonObject jsonObject = new JsonObject();
-            jsonObject.addProperty("network", route.network);
-            jsonObject.addProperty("netmask", route.getNetmask());
+            jsonObject.addProperty("network", route.prefix.networkString());
+            jsonObject.addProperty("netmask", route.prefix.netmaskString());
             jsonObject.addProperty("peer", route.nextHop);
-            jsonObject.addProperty("localpref", route.localpref);
-            jsonObject.add("ASPath", gson.toJsonTree(route.ASPath).getAsJsonArray());
-            jsonObject.addProperty("selfOrigin", route.selfOrigin);
-            jsonObject.addProperty("origin", route.origin.toString());
+            jsonObject.addProperty("localpref", route.attributes.localpref);
+            jsonObject.add("ASPath", gson.toJsonTree(route.attributes.ASPath).getAsJsonArray());
+            jsonObject.addProperty("selfOrigin", route.attributes.selfOrigin);
+            jsonObject.addProperty("origin", route.attributes.origin.toString());
             return jsonObject;
         }
     }
@@ -0,0 +1,744 @@
+package json;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import messages.*;
+import remote.Route;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Streaming JSON codec for messages. Messages are read straight from a received buffer into message objects and
+ * written straight into an output buffer, without building intermediate JSON trees or Gson instances.
+ */
+public class MessageCodec {
+    private static final byte[] TYPE_KEY = {'t', 'y', 'p', 'e'};
+    private static final byte[] SRC_KEY = {'s', 'r', 'c'};
+    private static final byte[] DST_KEY = {'d', 's', 't'};
+    //Largest UDP payload over IPv4. Each chunk of a table dump fits in one.
+    public static final int MAX_DATAGRAM = 65507;
+    //Room left before the routes of a table chunk for its header, which is only written once they are.
+    private static final int TABLE_HEADER_ROOM = 128;
+
+    /**
+     * Decodes a message from the remaining bytes of a buffer.
+     *
+     * @param buffer buffer containing one UTF-8 encoded JSON message. Its position is advanced past the message.
+     * @return the decoded message.
+     * @throws IOException If the message is not valid JSON.
+     * @throws JsonParseException If the message is valid JSON but not a message a router can receive.
+     */
+    public static Message decode(ByteBuffer buffer) throws IOException {
+        //The type decides how msg is read, and may come after it, so find it before parsing.
+        MessageHeader header = new MessageHeader();
+        peekHeader(buffer, header);
+        Message.MessageType type = header.type;
+        if (type == null) {
+            throw new JsonParseException("Message has no known type");
+        }
+        if (type == Message.MessageType.table) {
+            //Tables are only sent by routers, in answer to a dump, so one received is rejected rather than decoded.
+            throw new JsonParseException("Table messages are not decoded");
+        }
+
+        JsonReader reader = new JsonReader(new ByteBufferReader(buffer));
+        reader.setLenient(true);
+
+        String src = null;
+        String dst = null;
+        Object msg = null;
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "src":
+                        src = nextNullableString(reader);
+                        break;
+                    case "dst":
+                        dst = nextNullableString(reader);
+                        break;
+                    case "msg":
+                        msg = readMsg(reader, type);
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (IllegalStateException | NumberFormatException e) {
+            //The reader found a value of the wrong kind.
+            throw new JsonParseException("Malformed " + wireName(type) + " message", e);
+        }
+
+        switch (type) {
+            case update:
+                if (msg == null) {
+                    throw new JsonParseException("Update message has no msg");
+                }
+                return new UpdateMessage(src, dst, (UpdateMessage.UpdateParams) msg);
+            case withdraw:
+                return new WithdrawMessage(src, dst, msg == null ? new WithdrawMessage.WithdrawNetwork[0] : (WithdrawMessage.WithdrawNetwork[]) msg);
+            case data:
+                return new DataMessage(src, dst, msg);
+            case dump:
+                return new DumpMessage(src, dst);
+            case handshake:
+                return new HandshakeMessage(src, dst);
+            case eor:
+                return new EndOfRibMessage(src, dst);
+            default:
+                return new NoRouteMessage(src, dst);
+        }
+    }
+
+    /**
+     * Reads the type, source and destination of a message by scanning its bytes for the top-level fields, without
+     * decoding the rest of the message, allocating, or moving the buffer's position.
+     *
+     * @param buffer buffer containing one JSON message.
+     * @param header header to fill in, which is reset first.
+     * @return true if the type, source and destination were all found.
+     */
+    public static boolean peekHeader(ByteBuffer buffer, MessageHeader header) {
+        header.reset();
+        int depth = 0;
+        int end = buffer.limit();
+        for (int i = buffer.position(); i < end; i++) {
+            byte b = buffer.get(i);
+            if (b == '{' || b == '[') {
+                depth++;
+            } else if (b == '}' || b == ']') {
+                depth--;
+            } else if (b == '"' || b == '\'') {
+                int stringEnd = endOfString(buffer, i, end);
+                int valueStart = depth == 1 ? skipToValue(buffer, stringEnd + 1, end) : -1;
+                if (valueStart < 0) {
+                    i = stringEnd;
+                    continue;
+                }
+
+                int valueEnd = endOfString(buffer, valueStart, end);
+                if (matches(buffer, i + 1, stringEnd, TYPE_KEY)) {
+                    header.type = typeOf(buffer, valueStart + 1, valueEnd);
+                } else if (matches(buffer, i + 1, stringEnd, SRC_KEY)) {
+                    long src = parseAddress(buffer, valueStart + 1, valueEnd);
+                    header.src = (int) src;
+                    header.hasSrc = src >= 0;
+                } else if (matches(buffer, i + 1, stringEnd, DST_KEY)) {
+                    long dst = parseAddress(buffer, valueStart + 1, valueEnd);
+                    header.dst = (int) dst;
+                    header.hasDst = dst >= 0;
+                }
+                if (header.isComplete()) {
+                    return true;
+                }
+                i = valueEnd;
+            }
+        }
+        return header.isComplete();
+    }
+
+    /**
+     * Parses a dotted quad IP address between two indices of a buffer into its int encoding.
+     *
+     * @param buffer buffer containing the address.
+     * @param start  index of the first byte of the address.
+     * @param end    index after the last byte of the address.
+     * @return the address as an unsigned value, or -1 if the bytes are not an IP address.
+     */
+    private static long parseAddress(ByteBuffer buffer, int start, int end) {
+        long address = 0;
+        int octet = 0;
+        int digits = 0;
+        int dots = 0;
+        for (int i = start; i < end; i++) {
+            byte b = buffer.get(i);
+            if (b == '.' && digits > 0 && dots < 3) {
+                address = (address << 8) | octet;
+                octet = 0;
+                digits = 0;
+                dots++;
+            } else if (b >= '0' && b <= '9' && digits < 3) {
+                octet = octet * 10 + (b - '0');
+                digits++;
+                if (octet > 255) {
+                    return -1;
+                }
+            } else {
+                return -1;
+            }
+        }
+        if (dots != 3 || digits == 0) {
+            return -1;
+        }
+        return (address << 8) | octet;
+    }
+
+    /**
+     * Returns the index of the quote closing the string that opens at the given index.
+     */
+    private static int endOfString(ByteBuffer buffer, int start, int end) {
+        byte quote = buffer.get(start);
+        for (int i = start + 1; i < end; i++) {
+            byte b = buffer.get(i);
+            if (b == '\\') {
+                i++;
+            } else if (b == quote) {
+                return i;
+            }
+        }
+        return end;
+    }
+
+    /**
+     * Returns the index of the quote opening the string value of a key whose closing quote is just before the given
+     * index, or -1 if the string wasn't a key or its value isn't a string.
+     */
+    private static int skipToValue(ByteBuffer buffer, int start, int end) {
+        boolean colon = false;
+        for (int i = start; i < end; i++) {
+            byte b = buffer.get(i);
+            if (b == ':' && !colon) {
+                colon = true;
+            } else if ((b == '"' || b == '\'') && colon) {
+                return i;
+            } else if (b != ' ' && b != '\t' && b != '\r' && b != '\n') {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns whether the bytes of a buffer between two indices equal the given bytes.
+     */
+    private static boolean matches(ByteBuffer buffer, int start, int end, byte[] expected) {
+        if (end - start != expected.length) {
+            return false;
+        }
+        for (int i = 0; i < expected.length; i++) {
+            if (buffer.get(start + i) != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the message type named by the bytes of a buffer between two indices.
+     */
+    private static Message.MessageType typeOf(ByteBuffer buffer, int start, int end) {
+        for (Message.MessageType type : Message.MessageType.values()) {
+            String name = wireName(type);
+            if (name.length() == end - start) {
+                boolean equal = true;
+                for (int i = 0; i < name.length() && equal; i++) {
+                    equal = buffer.get(start + i) == name.charAt(i);
+                }
+                if (equal) {
+                    return type;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the name of a message type as it appears in the type field of a message.
+     *
+     * @param type the message type.
+     * @return the name used on the wire.
+     */
+    public static String wireName(Message.MessageType type) {
+        return type == Message.MessageType.noRoute ? "no route" : type.name();
+    }
+
+    /**
+     * Reads the msg field of a message of the given type.
+     */
+    private static Object readMsg(JsonReader reader, Message.MessageType type) throws IOException {
+        switch (type) {
+            case update:
+                return readUpdateParams(reader);
+            case withdraw:
+                return readWithdrawNetworks(reader);
+            case data:
+                return readValue(reader);
+            default:
+                reader.skipValue();
+                return null;
+        }
+    }
+
+    /**
+     * Reads the parameters of an update message.
+     */
+    private static UpdateMessage.UpdateParams readUpdateParams(JsonReader reader) throws IOException {
+        String network = null;
+        String netmask = null;
+        int localpref = 0;
+        boolean selfOrigin = false;
+        List<Integer> ASPath = new ArrayList<>();
+        UpdateMessage.UpdateParams.Origin origin = UpdateMessage.UpdateParams.Origin.UNK;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "network":
+                    network = reader.nextString();
+                    break;
+                case "netmask":
+                    netmask = reader.nextString();
+                    break;
+                case "localpref":
+                    localpref = reader.nextInt();
+                    break;
+                case "selfOrigin":
+                    selfOrigin = reader.nextBoolean();
+                    break;
+                case "ASPath":
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        ASPath.add(reader.nextInt());
+                    }
+                    reader.endArray();
+                    break;
+                case "origin":
+                    origin = readOrigin(reader.nextString());
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (network == null || netmask == null) {
+            throw new JsonParseException("Update message has no network or netmask");
+        }
+
+        return new UpdateMessage.UpdateParams(network, netmask, localpref, selfOrigin, ASPath, origin);
+    }
+
+    /**
+     * Returns the origin named by the origin field of an update message.
+     */
+    private static UpdateMessage.UpdateParams.Origin readOrigin(String name) {
+        try {
+            return UpdateMessage.UpdateParams.Origin.valueOf(name.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new JsonParseException("Unknown origin: " + name);
+        }
+    }
+
+    /**
+     * Reads the networks of a withdraw message.
+     */
+    private static WithdrawMessage.WithdrawNetwork[] readWithdrawNetworks(JsonReader reader) throws IOException {
+        List<WithdrawMessage.WithdrawNetwork> networks = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            String network = null;
+            String netmask = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "network":
+                        network = reader.nextString();
+                        break;
+                    case "netmask":
+                        netmask = reader.nextString();
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            reader.endObject();
+            if (network == null || netmask == null) {
+                throw new JsonParseException("Withdrawn network has no network or netmask");
+            }
+            networks.add(new WithdrawMessage.WithdrawNetwork(network, netmask));
+        }
+        reader.endArray();
+        return networks.toArray(new WithdrawMessage.WithdrawNetwork[0]);
+    }
+
+    /**
+     * Reads an arbitrary JSON value into maps, lists, strings, numbers and booleans.
+     */
+    private static Object readValue(JsonReader reader) throws IOException {
+        switch (reader.peek()) {
+            case BEGIN_OBJECT:
+                Map<String, Object> object = new LinkedHashMap<>();
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    object.put(reader.nextName(), readValue(reader));
+                }
+                reader.endObject();
+                return object;
+            case BEGIN_ARRAY:
+                List<Object> array = new ArrayList<>();
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    array.add(readValue(reader));
+                }
+                reader.endArray();
+                return array;
+            case NUMBER:
+                return new BigDecimal(reader.nextString());
+            case BOOLEAN:
+                return reader.nextBoolean();
+            case NULL:
+                reader.nextNull();
+                return null;
+            default:
+                return reader.nextString();
+        }
+    }
+
+    /**
+     * Reads a string that may be null.
+     */
+    private static String nextNullableString(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextString();
+    }
+
+    /**
+     * Encodes a message as UTF-8 JSON into a buffer.
+     *
+     * @param message the message to encode.
+     * @param buffer  the buffer to write to, starting at its position.
+     * @throws IOException If the message could not be written.
+     * @throws java.nio.BufferOverflowException If the message does not fit in the buffer.
+     */
+    public static void encode(Message message, ByteBuffer buffer) throws IOException {
+        JsonWriter writer = new JsonWriter(new ByteBufferWriter(buffer));
+        writer.setSerializeNulls(false);
+
+        writer.beginObject();
+        writer.name("type").value(wireName(message.getType()));
+        writer.name("src").value(message.src);
+        writer.name("dst").value(message.dst);
+        writer.name("msg");
+        switch (message.getType()) {
+            case update:
+                writeUpdateParams(writer, (UpdateMessage.PublicUpdateParams) message.msg);
+                break;
+            case withdraw:
+                writeWithdrawNetworks(writer, ((WithdrawMessage) message).getWithdrawNetworks());
+                break;
+            case table:
+                writeRoutes(writer, message);
+                break;
+            case data:
+                writeValue(writer, message.msg);
+                break;
+            default:
+                writer.beginObject().endObject();
+        }
+        writer.endObject();
+        writer.flush();
+    }
+
+    /**
+     * Encodes one chunk of a table dump: as many routes as fit in a datagram, starting from a given route, written
+     * straight from the routes without building the table message. A table that fits in a single chunk is encoded
+     * exactly as a table message; otherwise each chunk also has a "seq" field, counting from 0, and a "last" field
+     * that is true on the final chunk.
+     *
+     * @param src    address the table is sent from.
+     * @param dst    address the table is sent to.
+     * @param routes the routes of the table.
+     * @param from   index of the first route of the chunk.
+     * @param seq    sequence number of the chunk.
+     * @param buffer the buffer to write to, starting at its position, with room for MAX_DATAGRAM bytes. On return its
+     *               position and limit frame the encoded chunk.
+     * @return the index of the first route not in the chunk, which is routes.size() after the last chunk.
+     * @throws IOException If the chunk could not be written.
+     * @throws java.nio.BufferOverflowException If a single route does not fit in a datagram.
+     */
+    public static int encodeTableChunk(String src, String dst, List<Route> routes, int from, int seq, ByteBuffer buffer) throws IOException {
+        int start = buffer.position();
+        int routesStart = start + TABLE_HEADER_ROOM;
+        //Keep room for closing the array and object.
+        buffer.limit(start + MAX_DATAGRAM - 2);
+        buffer.position(routesStart);
+        int next = from;
+        while (next < routes.size()) {
+            int routeStart = buffer.position();
+            try {
+                if (next > from) {
+                    buffer.put((byte) ',');
+                }
+                JsonWriter writer = new JsonWriter(new ByteBufferWriter(buffer));
+                writeRoute(writer, routes.get(next));
+                writer.flush();
+            } catch (BufferOverflowException e) {
+                if (next == from) {
+                    throw e;
+                }
+                //The route goes in the next chunk.
+                buffer.position(routeStart);
+                break;
+            }
+            next++;
+        }
+        buffer.limit(start + MAX_DATAGRAM);
+        buffer.put((byte) ']').put((byte) '}');
+        int end = buffer.position();
+
+        //Now that it is known whether this is the last chunk, write the header just before the routes.
+        StringBuilder header = new StringBuilder("{\"type\":\"table\",\"src\":\"").append(src)
+                .append("\",\"dst\":\"").append(dst).append('"');
+        if (from > 0 || next < routes.size()) {
+            header.append(",\"seq\":").append(seq).append(",\"last\":").append(next == routes.size());
+        }
+        header.append(",\"msg\":[");
+        byte[] headerBytes = header.toString().getBytes(StandardCharsets.UTF_8);
+        if (headerBytes.length > TABLE_HEADER_ROOM) {
+            throw new IOException("Table header too long: " + header);
+        }
+        buffer.position(routesStart - headerBytes.length);
+        buffer.put(headerBytes);
+        buffer.limit(end);
+        buffer.position(routesStart - headerBytes.length);
+        return next;
+    }
+
+    /**
+     * Writes the parameters of an update message.
+     */
+    private static void writeUpdateParams(JsonWriter writer, UpdateMessage.PublicUpdateParams params) throws IOException {
+        writer.beginObject();
+        writer.name("network").value(params.network);
+        writer.name("netmask").value(params.netmask);
+        writer.name("ASPath");
+        writeASPath(writer, params.ASPath);
+        if (params instanceof UpdateMessage.UpdateParams) {
+            UpdateMessage.UpdateParams fullParams = (UpdateMessage.UpdateParams) params;
+            writer.name("localpref").value(fullParams.localpref);
+            writer.name("selfOrigin").value(fullParams.selfOrigin);
+            writer.name("origin").value(fullParams.origin.toString());
+        }
+        writer.endObject();
+    }
+
+    /**
+     * Writes the networks of a withdraw message.
+     */
+    private static void writeWithdrawNetworks(JsonWriter writer, WithdrawMessage.WithdrawNetwork[] networks) throws IOException {
+        writer.beginArray();
+        for (WithdrawMessage.WithdrawNetwork network : networks) {
+            writer.beginObject();
+            writer.name("network").value(network.network);
+            writer.name("netmask").value(network.netmask);
+            writer.endObject();
+        }
+        writer.endArray();
+    }
+
+    /**
+     * Writes the routes of a table message.
+     */
+    @SuppressWarnings("unchecked")
+    private static void writeRoutes(JsonWriter writer, Message message) throws IOException {
+        writer.beginArray();
+        for (Route route : (List<Route>) message.msg) {
+            writeRoute(writer, route);
+        }
+        writer.endArray();
+    }
+
+    /**
+     * Writes a route as it appears in a table message.
+     *
+     * @param writer the writer to write to.
+     * @param route  the route to write.
+     * @throws IOException If the route could not be written.
+     */
+    public static void writeRoute(JsonWriter writer, Route route) throws IOException {
+        writer.beginObject();
+        writer.name("network").value(route.prefix.networkString());
+        writer.name("netmask").value(route.prefix.netmaskString());
+        writer.name("peer").value(route.nextHop);
+        writer.name("localpref").value(route.attributes.localpref);
+        writer.name("ASPath");
+        writer.beginArray();
+        for (int asn : route.attributes.ASPath) {
+            writer.value(asn);
+        }
+        writer.endArray();
+        writer.name("selfOrigin").value(route.attributes.selfOrigin);
+        writer.name("origin").value(route.attributes.origin.toString());
+        writer.endObject();
+    }
+
+    /**
+     * Writes an ASPath as an array of ASNs.
+     */
+    private static void writeASPath(JsonWriter writer, List<Integer> ASPath) throws IOException {
+        writer.beginArray();
+        for (int i = 0; i < ASPath.size(); i++) {
+            writer.value(ASPath.get(i));
+        }
+        writer.endArray();
+    }
+
+    /**
+     * Writes an arbitrary value read by readValue.
+     */
+    private static void writeValue(JsonWriter writer, Object value) throws IOException {
+        if (value == null) {
+            writer.beginObject().endObject();
+        } else if (value instanceof Map) {
+            writer.beginObject();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                writer.name(String.valueOf(entry.getKey()));
+                writeValue(writer, entry.getValue());
+            }
+            writer.endObject();
+        } else if (value instanceof List) {
+            writer.beginArray();
+            for (Object element : (List<?>) value) {
+                writeValue(writer, element);
+            }
+            writer.endArray();
+        } else if (value instanceof Number) {
+            writer.value((Number) value);
+        } else if (value instanceof Boolean) {
+            writer.value((Boolean) value);
+        } else {
+            writer.value(value.toString());
+        }
+    }
+
+    /**
+     * A Reader decoding UTF-8 straight from a ByteBuffer, advancing its position.
+     */
+    private static final class ByteBufferReader extends Reader {
+        private final ByteBuffer buffer;
+        //Second half of a surrogate pair that didn't fit in the last read.
+        private int pendingChar = -1;
+
+        ByteBufferReader(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read(char[] chars, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            int count = 0;
+            if (pendingChar >= 0) {
+                chars[offset + count++] = (char) pendingChar;
+                pendingChar = -1;
+            }
+            while (count < length && buffer.hasRemaining()) {
+                int b = buffer.get() & 0xFF;
+                if (b < 0x80) {
+                    chars[offset + count++] = (char) b;
+                    continue;
+                }
+
+                int codePoint;
+                if (b >= 0xF0) {
+                    codePoint = ((b & 0x07) << 18) | (continuation() << 12) | (continuation() << 6) | continuation();
+                } else if (b >= 0xE0) {
+                    codePoint = ((b & 0x0F) << 12) | (continuation() << 6) | continuation();
+                } else {
+                    codePoint = ((b & 0x1F) << 6) | continuation();
+                }
+
+                if (Character.isSupplementaryCodePoint(codePoint)) {
+                    chars[offset + count++] = Character.highSurrogate(codePoint);
+                    if (count < length) {
+                        chars[offset + count++] = Character.lowSurrogate(codePoint);
+                    } else {
+                        pendingChar = Character.lowSurrogate(codePoint);
+                    }
+                } else {
+                    chars[offset + count++] = (char) codePoint;
+                }
+            }
+            return count == 0 ? -1 : count;
+        }
+
+        private int continuation() {
+            return buffer.hasRemaining() ? buffer.get() & 0x3F : 0;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * A Writer encoding UTF-8 straight into a ByteBuffer.
+     */
+    private static final class ByteBufferWriter extends Writer {
+        private final ByteBuffer buffer;
+        //First half of a surrogate pair whose second half hasn't been written yet.
+        private char highSurrogate;
+
+        ByteBufferWriter(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public void write(int c) {
+            char ch = (char) c;
+            if (ch < 0x80) {
+                buffer.put((byte) ch);
+            } else if (ch < 0x800) {
+                buffer.put((byte) (0xC0 | (ch >> 6)));
+                buffer.put((byte) (0x80 | (ch & 0x3F)));
+            } else if (Character.isHighSurrogate(ch)) {
+                highSurrogate = ch;
+            } else if (Character.isLowSurrogate(ch)) {
+                int codePoint = Character.toCodePoint(highSurrogate, ch);
+                buffer.put((byte) (0xF0 | (codePoint >> 18)));
+                buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+            } else {
+                buffer.put((byte) (0xE0 | (ch >> 12)));
+                buffer.put((byte) (0x80 | ((ch >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (ch & 0x3F)));
+            }
+        }
+
+        @Override
+        public void write(char[] chars, int offset, int length) {
+            for (int i = offset; i < offset + length; i++) {
+                write(chars[i]);
+            }
+        }
+
+        @Override
+        public void write(String string, int offset, int length) {
+            for (int i = offset; i < offset + length; i++) {
+                write(string.charAt(i));
+            }
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
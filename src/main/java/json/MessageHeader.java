@@ -0,0 +1,35 @@
+package json;
+
+import messages.Message;
+
+/**
+ * The type, source and destination of a message, read from its raw bytes without decoding the rest of it. Instances
+ * are meant to be reused between messages.
+ */
+public class MessageHeader {
+    public Message.MessageType type;
+    public int src;
+    public int dst;
+    public boolean hasSrc;
+    public boolean hasDst;
+
+    /**
+     * Clears the header before it is filled in for another message.
+     */
+    public void reset() {
+        type = null;
+        src = 0;
+        dst = 0;
+        hasSrc = false;
+        hasDst = false;
+    }
+
+    /**
+     * Returns whether all fields of the header were found.
+     *
+     * @return true if the type, source and destination are known.
+     */
+    public boolean isComplete() {
+        return type != null && hasSrc && hasDst;
+    }
+}
@@ -0,0 +1,85 @@
+package loadgen;
+
+import remote.Relation;
+import remote.Router;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A neighbor the load generator plays, with a loopback channel the router is connected to. Like the simulator's
+ * peers, it learns the router's port from the handshake the router sends when it starts.
+ */
+public class FakeNeighbor {
+    //Address of the neighbor, and of the router on the link to it.
+    public final String address;
+    public final String routerAddress;
+    public final Relation relation;
+    public final DatagramChannel channel;
+    //Port the router sends to this neighbor from, known once its handshake arrived.
+    private volatile SocketAddress routerPort;
+
+    /**
+     * Creates a neighbor, opening a channel bound to an ephemeral loopback port.
+     *
+     * @param address  address of the neighbor.
+     * @param relation relationship of the neighbor to the router.
+     * @throws IOException If the channel could not be opened.
+     */
+    public FakeNeighbor(String address, Relation relation) throws IOException {
+        this.address = address;
+        this.routerAddress = Router.ourAddr(address);
+        this.relation = relation;
+        this.channel = DatagramChannel.open();
+        this.channel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    }
+
+    /**
+     * Returns the command line argument connecting the router to this neighbor.
+     *
+     * @return the connection, formatted as port-address-relation.
+     * @throws IOException If the channel's port could not be read.
+     */
+    public String connection() throws IOException {
+        int port = ((InetSocketAddress) channel.getLocalAddress()).getPort();
+        return port + "-" + address + "-" + relation.name().toLowerCase();
+    }
+
+    /**
+     * Records the port the router sent its handshake from.
+     *
+     * @param port the router's port.
+     */
+    void handshake(SocketAddress port) {
+        routerPort = port;
+    }
+
+    /**
+     * Returns whether the router's handshake has arrived.
+     *
+     * @return true if the neighbor can send to the router.
+     */
+    public boolean isConnected() {
+        return routerPort != null;
+    }
+
+    /**
+     * Sends a message to the router.
+     *
+     * @param json the message.
+     * @throws IOException If the message could not be sent.
+     */
+    public void send(String json) throws IOException {
+        channel.send(ByteBuffer.wrap(json.getBytes(StandardCharsets.UTF_8)), routerPort);
+    }
+
+    @Override
+    public String toString() {
+        return address + "-" + relation.name().toLowerCase();
+    }
+}
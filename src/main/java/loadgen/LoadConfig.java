@@ -0,0 +1,119 @@
+package loadgen;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The configuration of a load generator run, parsed from its command line as --key=value options. Options the load
+ * generator doesn't know are passed on to the router it starts.
+ */
+public class LoadConfig {
+    //Scenario file to replay, in the simulator's config format, or null for a synthetic workload.
+    public String scenario = null;
+    //Number of times the scenario is replayed.
+    public int repeat = 1;
+    //Number of fake neighbors of a synthetic workload, and prefixes they announce between them.
+    public int neighbors = 4;
+    public int prefixes = 1000;
+    //Number of messages in the traffic phase of a synthetic workload.
+    public int messages = 100000;
+    //Shares of the traffic phase that are announcements and withdrawals, the rest being data messages.
+    public double updateRatio = 0.05;
+    public double withdrawRatio = 0.01;
+    //Messages sent per second, 0 to send as fast as possible.
+    public int rate = 10000;
+    //Time to wait for the last messages to arrive after the last message is sent.
+    public int drainMillis = 500;
+    //Whether the router is started separately, rather than in this process.
+    public boolean external = false;
+    //Seed of the synthetic workload.
+    public long seed = 3700;
+    //Options passed on to the router, as --key=value.
+    public List<String> routerOptions = new ArrayList<>();
+
+    /**
+     * Parses a configuration from command line arguments.
+     *
+     * @param args the options.
+     * @return the parsed configuration.
+     * @throws IllegalArgumentException If an argument is not an option or its value is invalid.
+     */
+    public static LoadConfig parse(String[] args) {
+        LoadConfig config = new LoadConfig();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                throw new IllegalArgumentException("Expected options formatted as --key=value, got " + arg);
+            }
+            int equals = arg.indexOf('=');
+            String key = equals < 0 ? arg.substring(2) : arg.substring(2, equals);
+            String value = equals < 0 ? "true" : arg.substring(equals + 1);
+            if (!config.set(key, value)) {
+                config.routerOptions.add(arg);
+            }
+        }
+        return config;
+    }
+
+    /**
+     * Sets an option by its command line name.
+     *
+     * @param key   name of the option, without the leading dashes.
+     * @param value value of the option.
+     * @return false if the option is not a load generator option.
+     * @throws IllegalArgumentException If the value is invalid.
+     */
+    private boolean set(String key, String value) {
+        switch (key) {
+            case "scenario":
+                scenario = value;
+                break;
+            case "repeat":
+                repeat = atLeast(key, value, 1);
+                break;
+            case "neighbors":
+                neighbors = atLeast(key, value, 1);
+                if (neighbors > 250) {
+                    throw new IllegalArgumentException("neighbors must be at most 250");
+                }
+                break;
+            case "prefixes":
+                prefixes = atLeast(key, value, 1);
+                if (prefixes > 1 << 16) {
+                    throw new IllegalArgumentException("prefixes must be at most " + (1 << 16));
+                }
+                break;
+            case "messages":
+                messages = atLeast(key, value, 0);
+                break;
+            case "update-ratio":
+                updateRatio = Double.parseDouble(value);
+                break;
+            case "withdraw-ratio":
+                withdrawRatio = Double.parseDouble(value);
+                break;
+            case "rate":
+                rate = atLeast(key, value, 0);
+                break;
+            case "drain-ms":
+                drainMillis = atLeast(key, value, 0);
+                break;
+            case "external":
+                external = Boolean.parseBoolean(value);
+                break;
+            case "seed":
+                seed = Long.parseLong(value);
+                break;
+            default:
+                return false;
+        }
+        return true;
+    }
+
+    private static int atLeast(String key, String value, int min) {
+        int parsed = Integer.parseInt(value);
+        if (parsed < min) {
+            throw new IllegalArgumentException(key + " must be at least " + min);
+        }
+        return parsed;
+    }
+}
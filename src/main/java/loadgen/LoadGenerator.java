@@ -0,0 +1,527 @@
+package loadgen;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import json.MessageCodec;
+import json.MessageHeader;
+import messages.Message;
+import remote.Prefix;
+import remote.Relation;
+import remote.Router;
+import remote.RouterConfig;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives a router over loopback UDP, playing all of its neighbors, and measures how it keeps up. The load generator
+ * either replays a scenario file in the simulator's config format, at a steady rate rather than one message per
+ * second, or sends a synthetic workload: every neighbor announces a share of the prefixes, then a stream of data
+ * messages is sent between them, mixed with re-announcements and withdrawals.
+ * <p>
+ * Data messages carry the time they were sent, so the neighbor they are forwarded to can measure how long the router
+ * took. The router runs in this process unless --external is given, in which case its command line is printed for
+ * it to be started separately. Before each data step of a scenario, a router in this process is given time to handle
+ * every message sent before, as the simulator waits a second between steps. It can be run from the router's jar:
+ * <pre>
+ * java -cp BGP-Router-1.0-SNAPSHOT-jar-with-dependencies.jar loadgen.LoadGenerator [--key=value ...]
+ * </pre>
+ */
+public class LoadGenerator {
+    private static final long HANDSHAKE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
+    private static final long EXTERNAL_HANDSHAKE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(120);
+    private static final long SETTLE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
+    //Synthetic prefixes are /24s numbered up from 11.0.0.0.
+    private static final int SYNTHETIC_NETWORK = 11 << 24;
+    private static final byte[] SENT_KEY = "\"sent\":".getBytes(StandardCharsets.US_ASCII);
+
+    private final LoadConfig config;
+    private final List<FakeNeighbor> neighbors = new ArrayList<>();
+    private final Map<String, FakeNeighbor> neighborsByAddress = new HashMap<>();
+    private final Random random;
+    private final LoadReport report = new LoadReport();
+    //The router, if it runs in this process.
+    private Router router;
+    //Messages other than data messages sent to the router.
+    private long controlSent;
+
+    //Counters written only by the receiving thread.
+    private volatile long dataReceived;
+    private volatile long noRoute;
+    private volatile long updatesReceived;
+    private volatile long withdrawalsReceived;
+    private long[] latencies = new long[1024];
+    private int latencyCount;
+
+    //Time the next message is due to be sent, as System.nanoTime().
+    private long nextSend;
+
+    public LoadGenerator(LoadConfig config) {
+        this.config = config;
+        this.random = new Random(config.seed);
+    }
+
+    /**
+     * Runs the configured workload against a router and reports the results.
+     *
+     * @return the results of the run.
+     * @throws Exception If the router could not be started or reached.
+     */
+    public LoadReport run() throws Exception {
+        JsonObject scenario = null;
+        int asn = 1;
+        if (config.scenario != null) {
+            scenario = JsonParser.parseString(Files.readString(Paths.get(config.scenario))).getAsJsonObject();
+            asn = scenario.get("asn").getAsInt();
+            for (JsonElement network : scenario.getAsJsonArray("networks")) {
+                JsonObject networkObject = network.getAsJsonObject();
+                String address = withLastQuad(networkObject.get("network").getAsString(), 2);
+                addNeighbor(new FakeNeighbor(address, Relation.parse(networkObject.get("type").getAsString())));
+            }
+        } else {
+            for (int i = 0; i < config.neighbors; i++) {
+                //Every neighbor is a customer, so all data between them may be forwarded.
+                addNeighbor(new FakeNeighbor("10.0." + i + ".2", Relation.CUST));
+            }
+        }
+
+        Selector selector = Selector.open();
+        for (FakeNeighbor neighbor : neighbors) {
+            neighbor.channel.configureBlocking(false);
+            neighbor.channel.register(selector, SelectionKey.OP_READ, neighbor);
+        }
+        Thread receiver = new Thread(() -> receive(selector), "loadgen-receiver");
+        receiver.setDaemon(true);
+        receiver.start();
+
+        try {
+            List<String> args = new ArrayList<>();
+            args.add(Integer.toString(asn));
+            for (FakeNeighbor neighbor : neighbors) {
+                args.add(neighbor.connection());
+            }
+            args.addAll(config.routerOptions);
+            if (config.external) {
+                System.out.println("Start the router with: ./3700router " + String.join(" ", args));
+            } else {
+                router = startRouter(args.toArray(new String[0]));
+            }
+            awaitHandshakes(config.external ? EXTERNAL_HANDSHAKE_TIMEOUT_NANOS : HANDSHAKE_TIMEOUT_NANOS);
+
+            if (scenario != null) {
+                replay(scenario);
+            } else {
+                synthetic();
+            }
+            Thread.sleep(config.drainMillis);
+        } finally {
+            receiver.interrupt();
+            receiver.join();
+            if (router != null) {
+                router.stop();
+            }
+            for (FakeNeighbor neighbor : neighbors) {
+                neighbor.channel.close();
+            }
+        }
+
+        report.dataReceived = dataReceived;
+        report.noRoute = noRoute;
+        report.updatesReceived = updatesReceived;
+        report.withdrawalsReceived = withdrawalsReceived;
+        report.setLatencies(latencies, latencyCount);
+        return report;
+    }
+
+    private void addNeighbor(FakeNeighbor neighbor) {
+        neighbors.add(neighbor);
+        neighborsByAddress.put(neighbor.address, neighbor);
+    }
+
+    /**
+     * Starts a router in this process, on a thread of its own.
+     *
+     * @param args the router's command line.
+     * @return the router.
+     * @throws Exception If the router could not be created.
+     */
+    private static Router startRouter(String[] args) throws Exception {
+        Router router = new Router(RouterConfig.parse(args));
+        Thread thread = new Thread(() -> {
+            try {
+                router.run();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }, "router");
+        thread.setDaemon(true);
+        thread.start();
+        return router;
+    }
+
+    /**
+     * Waits for the router's handshake to arrive at every neighbor.
+     *
+     * @param timeoutNanos how long to wait.
+     * @throws IOException If a handshake did not arrive in time.
+     */
+    private void awaitHandshakes(long timeoutNanos) throws IOException {
+        long deadline = System.nanoTime() + timeoutNanos;
+        for (FakeNeighbor neighbor : neighbors) {
+            while (!neighbor.isConnected()) {
+                if (System.nanoTime() - deadline > 0) {
+                    throw new IOException("No handshake from the router to " + neighbor);
+                }
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+            }
+        }
+    }
+
+    /**
+     * Replays a scenario the configured number of times. Messages are sent as given, and each data step sends a data
+     * message between every pair of networks announced by different neighbors, as the simulator does. Expectations in
+     * the scenario are not checked.
+     *
+     * @param scenario the scenario, in the simulator's config format.
+     * @throws IOException If a message could not be sent.
+     */
+    private void replay(JsonObject scenario) throws IOException {
+        JsonArray steps = scenario.getAsJsonArray("messages");
+        Map<FakeNeighbor, Set<String>> announced = new HashMap<>();
+        for (FakeNeighbor neighbor : neighbors) {
+            announced.put(neighbor, new LinkedHashSet<>());
+        }
+
+        long start = startClock();
+        for (int i = 0; i < config.repeat; i++) {
+            for (JsonElement step : steps) {
+                JsonObject stepObject = step.getAsJsonObject();
+                switch (stepObject.get("type").getAsString()) {
+                    case "msg":
+                        JsonObject message = stepObject.getAsJsonObject("msg");
+                        FakeNeighbor source = neighborsByAddress.get(message.get("src").getAsString());
+                        trackAnnounced(message, announced.get(source));
+                        send(source, message.toString());
+                        break;
+                    case "data":
+                        awaitControlPlane();
+                        for (FakeNeighbor to : neighbors) {
+                            for (FakeNeighbor from : neighbors) {
+                                if (from == to) {
+                                    continue;
+                                }
+                                for (String fromNetwork : announced.get(from)) {
+                                    for (String toNetwork : announced.get(to)) {
+                                        sendData(from, withLastQuad(fromNetwork, 25), withLastQuad(toNetwork, 25));
+                                    }
+                                }
+                            }
+                        }
+                        break;
+                    case "dump":
+                        FakeNeighbor first = neighbors.get(0);
+                        send(first, "{\"type\": \"dump\", \"src\": \"" + first.address + "\", \"dst\": \"" + first.routerAddress
+                                + "\", \"msg\": {}}");
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+        report.elapsedNanos = System.nanoTime() - start;
+    }
+
+    /**
+     * Keeps track of the networks a neighbor has announced and not withdrawn.
+     *
+     * @param message   message the neighbor sends.
+     * @param announced the networks the neighbor has announced.
+     */
+    private static void trackAnnounced(JsonObject message, Set<String> announced) {
+        String type = message.get("type").getAsString();
+        if (type.equals("update")) {
+            announced.add(message.getAsJsonObject("msg").get("network").getAsString());
+        } else if (type.equals("withdraw")) {
+            for (JsonElement network : message.getAsJsonArray("msg")) {
+                announced.remove(network.getAsJsonObject().get("network").getAsString());
+            }
+        }
+    }
+
+    /**
+     * Sends the synthetic workload. Every neighbor first announces its own network and a share of the prefixes, and
+     * the router is given time to send the resulting announcements. The traffic that follows is measured.
+     *
+     * @throws Exception If a message could not be sent.
+     */
+    private void synthetic() throws Exception {
+        int neighborCount = neighbors.size();
+        boolean[] isAnnounced = new boolean[config.prefixes];
+        int[] ASPath = new int[]{0};
+
+        startClock();
+        for (int i = 0; i < neighborCount; i++) {
+            FakeNeighbor neighbor = neighbors.get(i);
+            ASPath[0] = 100 + i;
+            send(neighbor, update(neighbor, withLastQuad(neighbor.address, 0), ASPath));
+        }
+        for (int prefix = 0; prefix < config.prefixes; prefix++) {
+            announce(prefix, 1);
+            isAnnounced[prefix] = true;
+        }
+        //Every announcement is forwarded to every other neighbor.
+        long expectedUpdates = (long) (neighborCount + config.prefixes) * (neighborCount - 1);
+        long deadline = System.nanoTime() + SETTLE_TIMEOUT_NANOS;
+        while (updatesReceived < expectedUpdates && System.nanoTime() - deadline < 0) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        awaitControlPlane();
+        report.messagesSent = 0;
+
+        long start = startClock();
+        for (int i = 0; i < config.messages; i++) {
+            double choice = random.nextDouble();
+            int prefix = random.nextInt(config.prefixes);
+            if (choice < config.withdrawRatio) {
+                if (isAnnounced[prefix]) {
+                    FakeNeighbor owner = owner(prefix);
+                    send(owner, "{\"type\": \"withdraw\", \"src\": \"" + owner.address + "\", \"dst\": \"" + owner.routerAddress
+                            + "\", \"msg\": [{\"network\": \"" + syntheticNetwork(prefix) + "\", \"netmask\": \"255.255.255.0\"}]}");
+                } else {
+                    announce(prefix, 1);
+                }
+                isAnnounced[prefix] = !isAnnounced[prefix];
+            } else if (choice < config.withdrawRatio + config.updateRatio) {
+                announce(prefix, 1 + random.nextInt(4));
+                isAnnounced[prefix] = true;
+            } else {
+                FakeNeighbor from = neighbors.get(random.nextInt(neighborCount));
+                sendData(from, withLastQuad(from.address, 25), withLastQuad(syntheticNetwork(prefix), 25));
+            }
+        }
+        report.elapsedNanos = System.nanoTime() - start;
+    }
+
+    /**
+     * Announces a synthetic prefix from the neighbor it belongs to.
+     *
+     * @param prefix       number of the prefix.
+     * @param ASPathLength length of the AS path to announce.
+     * @throws IOException If the message could not be sent.
+     */
+    private void announce(int prefix, int ASPathLength) throws IOException {
+        FakeNeighbor owner = owner(prefix);
+        int[] ASPath = new int[ASPathLength];
+        for (int i = 0; i < ASPathLength; i++) {
+            ASPath[i] = 100 + neighbors.indexOf(owner) + i;
+        }
+        send(owner, update(owner, syntheticNetwork(prefix), ASPath));
+    }
+
+    private FakeNeighbor owner(int prefix) {
+        return neighbors.get(prefix % neighbors.size());
+    }
+
+    private static String syntheticNetwork(int prefix) {
+        return Prefix.formatAddress(SYNTHETIC_NETWORK + (prefix << 8));
+    }
+
+    private static String update(FakeNeighbor neighbor, String network, int[] ASPath) {
+        StringBuilder json = new StringBuilder("{\"type\": \"update\", \"src\": \"").append(neighbor.address)
+                .append("\", \"dst\": \"").append(neighbor.routerAddress)
+                .append("\", \"msg\": {\"network\": \"").append(network)
+                .append("\", \"netmask\": \"255.255.255.0\", \"localpref\": 100, \"ASPath\": [");
+        for (int i = 0; i < ASPath.length; i++) {
+            json.append(i == 0 ? "" : ", ").append(ASPath[i]);
+        }
+        return json.append("], \"origin\": \"EGP\", \"selfOrigin\": false}}").toString();
+    }
+
+    private static String withLastQuad(String address, int quad) {
+        return address.substring(0, address.lastIndexOf('.') + 1) + quad;
+    }
+
+    /**
+     * Sends a data message stamped with the time it is sent.
+     *
+     * @param from neighbor to send the message from.
+     * @param src  source host.
+     * @param dst  destination host.
+     * @throws IOException If the message could not be sent.
+     */
+    private void sendData(FakeNeighbor from, String src, String dst) throws IOException {
+        pace();
+        report.dataSent++;
+        report.messagesSent++;
+        from.send("{\"type\": \"data\", \"src\": \"" + src + "\", \"dst\": \"" + dst + "\", \"msg\": {\"sent\":"
+                + System.nanoTime() + "}}");
+    }
+
+    private void send(FakeNeighbor from, String json) throws IOException {
+        pace();
+        report.messagesSent++;
+        controlSent++;
+        from.send(json);
+    }
+
+    /**
+     * Waits until a router in this process has handled every message other than data sent to it, so data sent next
+     * is forwarded against the routes they announced. Does nothing for an external router.
+     */
+    private void awaitControlPlane() {
+        long deadline = System.nanoTime() + SETTLE_TIMEOUT_NANOS;
+        while (router != null && router.getControlMessagesHandled() < controlSent && System.nanoTime() - deadline < 0) {
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+        }
+        //Pacing restarts from now, rather than bursting to catch up on the time spent waiting.
+        nextSend = Math.max(nextSend, System.nanoTime());
+    }
+
+    private long startClock() {
+        nextSend = System.nanoTime();
+        return nextSend;
+    }
+
+    /**
+     * Waits until the next message is due, keeping to the configured rate.
+     */
+    private void pace() {
+        if (config.rate == 0) {
+            return;
+        }
+        long now;
+        while ((now = System.nanoTime()) - nextSend < 0) {
+            long wait = nextSend - now;
+            if (wait > TimeUnit.MICROSECONDS.toNanos(100)) {
+                LockSupport.parkNanos(wait - TimeUnit.MICROSECONDS.toNanos(50));
+            } else {
+                Thread.onSpinWait();
+            }
+        }
+        nextSend += TimeUnit.SECONDS.toNanos(1) / config.rate;
+    }
+
+    /**
+     * Receives the messages the router sends to the neighbors until the thread is interrupted.
+     *
+     * @param selector selector the neighbors' channels are registered with.
+     */
+    private void receive(Selector selector) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(65535);
+        MessageHeader header = new MessageHeader();
+        try (selector) {
+            while (!Thread.currentThread().isInterrupted()) {
+                selector.select(10);
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    FakeNeighbor neighbor = (FakeNeighbor) key.attachment();
+                    SocketAddress from;
+                    while (true) {
+                        buffer.clear();
+                        from = neighbor.channel.receive(buffer);
+                        if (from == null) {
+                            break;
+                        }
+                        buffer.flip();
+                        handleReceived(neighbor, from, buffer, header);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            if (!Thread.currentThread().isInterrupted()) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void handleReceived(FakeNeighbor neighbor, SocketAddress from, ByteBuffer buffer, MessageHeader header) {
+        long now = System.nanoTime();
+        MessageCodec.peekHeader(buffer, header);
+        if (header.type == null) {
+            return;
+        }
+        switch (header.type) {
+            case handshake:
+                neighbor.handshake(from);
+                break;
+            case data:
+                long sent = readSent(buffer);
+                if (sent != 0) {
+                    if (latencyCount == latencies.length) {
+                        latencies = Arrays.copyOf(latencies, latencyCount * 2);
+                    }
+                    latencies[latencyCount++] = now - sent;
+                }
+                dataReceived++;
+                break;
+            case noRoute:
+                noRoute++;
+                break;
+            case update:
+                updatesReceived++;
+                break;
+            case withdraw:
+                withdrawalsReceived++;
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Reads the time a data message was sent from its bytes.
+     *
+     * @param buffer buffer containing the message.
+     * @return the time it was sent, as System.nanoTime(), or 0 if the message has none.
+     */
+    private static long readSent(ByteBuffer buffer) {
+        int end = buffer.limit() - SENT_KEY.length;
+        for (int i = buffer.position(); i <= end; i++) {
+            int j = 0;
+            while (j < SENT_KEY.length && buffer.get(i + j) == SENT_KEY[j]) {
+                j++;
+            }
+            if (j == SENT_KEY.length) {
+                long sent = 0;
+                boolean negative = false;
+                for (int k = i + j; k < buffer.limit(); k++) {
+                    byte b = buffer.get(k);
+                    if (b == '-') {
+                        negative = true;
+                    } else if (b >= '0' && b <= '9') {
+                        sent = sent * 10 + (b - '0');
+                    } else {
+                        break;
+                    }
+                }
+                return negative ? -sent : sent;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Runs the load generator from the command line and prints its report.
+     *
+     * @param args Options formatted as --key=value. Options the load generator doesn't know are passed on to the
+     *             router.
+     * @throws Exception If the load generator failed.
+     */
+    public static void main(String[] args) throws Exception {
+        LoadReport report = new LoadGenerator(LoadConfig.parse(args)).run();
+        System.out.println(report);
+    }
+}
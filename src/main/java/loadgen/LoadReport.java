@@ -0,0 +1,73 @@
+package loadgen;
+
+import java.util.Arrays;
+
+/**
+ * The results of a load generator run: how many messages were sent and arrived, and how long data messages took to
+ * be forwarded.
+ */
+public class LoadReport {
+    public long messagesSent;
+    public long dataSent;
+    //Data messages forwarded to a neighbor, and those answered with a no route message instead.
+    public long dataReceived;
+    public long noRoute;
+    //Announcements and withdrawals the router sent to the neighbors.
+    public long updatesReceived;
+    public long withdrawalsReceived;
+    //Time the traffic was sent over, in nanoseconds.
+    public long elapsedNanos;
+    //Forwarding latency of each data message received, in nanoseconds, sorted.
+    public long[] latencies = new long[0];
+
+    /**
+     * Returns the number of data messages that were neither forwarded nor answered with a no route message.
+     *
+     * @return the number of dropped data messages.
+     */
+    public long dropped() {
+        return dataSent - dataReceived - noRoute;
+    }
+
+    /**
+     * Returns the number of messages sent per second.
+     *
+     * @return the send throughput.
+     */
+    public double throughput() {
+        return elapsedNanos == 0 ? 0 : messagesSent * 1e9 / elapsedNanos;
+    }
+
+    /**
+     * Returns a percentile of the forwarding latency.
+     *
+     * @param percentile the percentile, from 0 to 100.
+     * @return the latency in nanoseconds, or 0 if no data message was received.
+     */
+    public long latency(double percentile) {
+        if (latencies.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile / 100 * latencies.length) - 1;
+        return latencies[Math.max(0, Math.min(latencies.length - 1, index))];
+    }
+
+    /**
+     * Sets the latencies of the received data messages.
+     *
+     * @param latencies the latencies in nanoseconds.
+     * @param count     the number of latencies in the array.
+     */
+    void setLatencies(long[] latencies, int count) {
+        this.latencies = Arrays.copyOf(latencies, count);
+        Arrays.sort(this.latencies);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("sent=%d (%.0f msg/s) data: sent=%d received=%d no-route=%d dropped=%d "
+                        + "latency-us: p50=%.1f p99=%.1f p999=%.1f updates-received=%d withdrawals-received=%d",
+                messagesSent, throughput(), dataSent, dataReceived, noRoute, dropped(),
+                latency(50) / 1e3, latency(99) / 1e3, latency(99.9) / 1e3, updatesReceived, withdrawalsReceived);
+    }
+}
@@ -4,7 +4,7 @@ package messages;
  * Represents a data message.
  */
 public class DataMessage extends Message {
-    public DataMessage(String src, String dst, String msg) {
+    public DataMessage(String src, String dst, Object msg) {
         super(MessageType.data, src, dst, msg);
     }
 }
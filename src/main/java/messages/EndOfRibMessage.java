@@ -0,0 +1,10 @@
+package messages;
+
+/**
+ * Represents an end-of-RIB message, which a restarted neighbor sends once it has announced all of its routes again.
+ */
+public class EndOfRibMessage extends Message {
+    public EndOfRibMessage(String src, String dst) {
+        super(MessageType.eor, src, dst, null);
+    }
+}
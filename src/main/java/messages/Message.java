@@ -11,7 +11,8 @@ public abstract class Message {
         noRoute,
         dump,
         table,
-        withdraw
+        withdraw,
+        eor
     }
 
     private final MessageType type;
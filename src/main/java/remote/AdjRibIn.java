@@ -0,0 +1,353 @@
+package remote;
+
+import java.util.*;
+
+/**
+ * Holds the routes announced by a single neighbor (its Adj-RIB-In), along with the aggregated form of those routes
+ * that appears in the routing table. Every change to the routes in the table is reported as a changed prefix, so the
+ * decision process only has to run for the prefixes an update or withdrawal touched.
+ */
+public class AdjRibIn {
+    private final String neighbor;
+    //Routes announced by the neighbor, by prefix.
+    private final Map<Prefix, Route> announcedRoutes = new HashMap<>();
+    //Routes in the routing table after aggregation.
+    private final Set<Route> routes = new LinkedHashSet<>();
+    //Routes in the routing table, by prefix. Routes with different attributes can share a prefix.
+    private final Map<Prefix, List<Route>> routesByPrefix = new HashMap<>();
+    //Map of routes that have been aggregated, to the route they have been aggregated to.
+    private final Map<Route, AggregatedRoute> routesAggregated = new HashMap<>();
+    //Routes in the routing table grouped by attributes, to find routes that can be aggregated.
+    private final AggregationIndex aggregationIndex = new AggregationIndex();
+    //Prefixes announced before the neighbor restarted and not announced again since.
+    private final Set<Prefix> stalePrefixes = new HashSet<>();
+    //Metrics counting aggregations and disaggregations.
+    private final RouterMetrics metrics;
+
+    public AdjRibIn(String neighbor) {
+        this(neighbor, new RouterMetrics(0, false));
+    }
+
+    /**
+     * Creates an Adj-RIB-In for a neighbor.
+     *
+     * @param neighbor address of the neighbor.
+     * @param metrics  the router's metrics, which count aggregations and disaggregations.
+     */
+    public AdjRibIn(String neighbor, RouterMetrics metrics) {
+        this.neighbor = neighbor;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Returns the address of the neighbor these routes were announced by.
+     *
+     * @return the neighbor's address.
+     */
+    public String getNeighbor() {
+        return neighbor;
+    }
+
+    /**
+     * Returns whether the neighbor has announced a prefix and not withdrawn it since.
+     *
+     * @param prefix the prefix.
+     * @return true if the prefix is announced.
+     */
+    public boolean isAnnounced(Prefix prefix) {
+        return announcedRoutes.containsKey(prefix);
+    }
+
+    /**
+     * Returns the route the neighbor announced for a prefix and hasn't withdrawn.
+     *
+     * @param prefix the prefix.
+     * @return the announced route, or null if the prefix isn't announced.
+     */
+    public Route getAnnounced(Prefix prefix) {
+        return announcedRoutes.get(prefix);
+    }
+
+    /**
+     * Returns the number of prefixes the neighbor has announced and not withdrawn.
+     *
+     * @return the number of announced prefixes.
+     */
+    public int announcedCount() {
+        return announcedRoutes.size();
+    }
+
+    /**
+     * Returns the routes in the routing table for exactly the given prefix.
+     *
+     * @param prefix the prefix.
+     * @return the routes for the prefix, which may be empty.
+     */
+    public List<Route> getRoutes(Prefix prefix) {
+        return routesByPrefix.getOrDefault(prefix, List.of());
+    }
+
+    /**
+     * Returns all routes in the routing table, after aggregation.
+     *
+     * @return the routes in the table.
+     */
+    public Collection<Route> getRoutes() {
+        return routes;
+    }
+
+    /**
+     * Adds a route announced by the neighbor, replacing its previous announcement for the same prefix.
+     *
+     * @param newRoute        the announced route.
+     * @param changedPrefixes collects the prefixes whose routes in the table changed.
+     */
+    public void announce(Route newRoute, Set<Prefix> changedPrefixes) {
+        if (!stalePrefixes.isEmpty()) {
+            stalePrefixes.remove(newRoute.prefix);
+        }
+        Route previousRoute = announcedRoutes.put(newRoute.prefix, newRoute);
+        if (previousRoute != null) {
+            disaggregateAndWithdraw(List.of(previousRoute), changedPrefixes);
+        }
+
+        if (!checkAggregate(newRoute, changedPrefixes)) {
+            addRoute(newRoute, changedPrefixes);
+        }
+    }
+
+    /**
+     * Marks every route the neighbor has announced as stale, as the neighbor restarted and is about to announce its
+     * routes again. Stale routes stay in the table until they are announced again or swept.
+     *
+     * @return the number of stale routes.
+     */
+    public int markStale() {
+        for (Route route : routes) {
+            if (route instanceof AggregatedRoute) {
+                for (Route routeInside : ((AggregatedRoute) route).getRoutesInside()) {
+                    stalePrefixes.add(routeInside.prefix);
+                }
+            } else {
+                stalePrefixes.add(route.prefix);
+            }
+        }
+        return stalePrefixes.size();
+    }
+
+    /**
+     * Absorbs the re-announcement of a stale route: if the neighbor announced the same route for the prefix before
+     * it restarted, the route is fresh again, and nothing else changes.
+     *
+     * @param route the announced route.
+     * @return true if the route was stale and unchanged, so the announcement needs no further handling.
+     */
+    public boolean refresh(Route route) {
+        if (stalePrefixes.isEmpty() || !stalePrefixes.contains(route.prefix)) {
+            return false;
+        }
+        if (!route.equals(getAnnounced(route.prefix))) {
+            return false;
+        }
+        stalePrefixes.remove(route.prefix);
+        return true;
+    }
+
+    /**
+     * Takes the prefixes of the routes still stale, which are no longer marked.
+     *
+     * @return the stale prefixes, to be withdrawn.
+     */
+    public List<Prefix> takeStale() {
+        List<Prefix> prefixes = new ArrayList<>(stalePrefixes);
+        stalePrefixes.clear();
+        return prefixes;
+    }
+
+    /**
+     * Restores a route in the routing table as it was saved, along with the announced routes aggregated into it,
+     * without aggregating it again.
+     *
+     * @param route           the route, an AggregatedRoute holding its announced routes if it was aggregated.
+     * @param changedPrefixes collects the prefixes whose routes in the table changed.
+     */
+    public void restore(Route route, Set<Prefix> changedPrefixes) {
+        if (route instanceof AggregatedRoute) {
+            for (Route routeInside : ((AggregatedRoute) route).getRoutesInside()) {
+                announcedRoutes.put(routeInside.prefix, routeInside);
+                routesAggregated.put(routeInside, (AggregatedRoute) route);
+            }
+        } else {
+            announcedRoutes.put(route.prefix, route);
+        }
+        addRoute(route, changedPrefixes);
+    }
+
+    /**
+     * Withdraws a batch of prefixes announced by the neighbor. Prefixes that were never announced are ignored.
+     *
+     * @param prefixes        the withdrawn prefixes.
+     * @param changedPrefixes collects the prefixes whose routes in the table changed.
+     */
+    public void withdraw(List<Prefix> prefixes, Set<Prefix> changedPrefixes) {
+        List<Route> withdrawnRoutes = new ArrayList<>();
+        for (Prefix prefix : prefixes) {
+            if (!stalePrefixes.isEmpty()) {
+                stalePrefixes.remove(prefix);
+            }
+            Route route = announcedRoutes.remove(prefix);
+            if (route != null) {
+                withdrawnRoutes.add(route);
+            }
+        }
+        disaggregateAndWithdraw(withdrawnRoutes, changedPrefixes);
+    }
+
+    /**
+     * Adds a route to the routing table.
+     *
+     * @param route           route to add.
+     * @param changedPrefixes collects the prefixes whose routes in the table changed.
+     */
+    private void addRoute(Route route, Set<Prefix> changedPrefixes) {
+        routes.add(route);
+        routesByPrefix.computeIfAbsent(route.prefix, prefix -> new ArrayList<>(1)).add(route);
+        if (route.prefix.length > 0) {
+            aggregationIndex.add(route);
+        }
+        changedPrefixes.add(route.prefix);
+    }
+
+    /**
+     * Removes a route from the routing table.
+     *
+     * @param route           route to remove.
+     * @param changedPrefixes collects the prefixes whose routes in the table changed.
+     */
+    private void removeRoute(Route route, Set<Prefix> changedPrefixes) {
+        routes.remove(route);
+        List<Route> prefixRoutes = routesByPrefix.get(route.prefix);
+        if (prefixRoutes != null) {
+            prefixRoutes.remove(route);
+            if (prefixRoutes.isEmpty()) {
+                routesByPrefix.remove(route.prefix);
+            }
+        }
+        aggregationIndex.remove(route);
+        changedPrefixes.add(route.prefix);
+    }
+
+    /**
+     * Checks if a route can be aggregated with existing routes and does so if possible. A route covered by an existing
+     * route is absorbed into it, a route covering existing routes absorbs them, and the result is then coalesced with
+     * its sibling prefix for as long as one with equal attributes is in the table.
+     *
+     * @param newRoute        route to aggregate into the routing table.
+     * @param changedPrefixes collects the prefixes whose routes in the table changed.
+     * @return true if route was aggregated, false if not.
+     */
+    private boolean checkAggregate(Route newRoute, Set<Prefix> changedPrefixes) {
+        if (newRoute.prefix.length == 0) {
+            //The default route is never aggregated.
+            return false;
+        }
+
+        Route aggregatedRoute = newRoute;
+        Route coveringRoute = aggregationIndex.findCovering(newRoute);
+        if (coveringRoute != null) {
+            aggregatedRoute = aggregate(coveringRoute.prefix, newRoute, List.of(coveringRoute), changedPrefixes);
+        } else {
+            List<Route> containedRoutes = aggregationIndex.findContained(newRoute);
+            if (!containedRoutes.isEmpty()) {
+                aggregatedRoute = aggregate(newRoute.prefix, newRoute, containedRoutes, changedPrefixes);
+            }
+        }
+
+        Route siblingRoute;
+        while ((siblingRoute = aggregationIndex.findSibling(aggregatedRoute)) != null) {
+            aggregatedRoute = aggregate(aggregatedRoute.prefix.parent(), aggregatedRoute, List.of(siblingRoute), changedPrefixes);
+        }
+
+        if (aggregatedRoute == newRoute) {
+            return false;
+        }
+        addRoute(aggregatedRoute, changedPrefixes);
+        return true;
+    }
+
+    /**
+     * Aggregates a route with routes already in the table, removing them from the table. The resulting route is not
+     * added to the table.
+     *
+     * @param prefix          prefix of the aggregated route.
+     * @param route           route being added, which may itself be an aggregation not yet in the table.
+     * @param existingRoutes  routes in the table to aggregate with.
+     * @param changedPrefixes collects the prefixes whose routes in the table changed.
+     * @return an AggregatedRoute, containing a list of all routes that have been aggregated to make it.
+     */
+    private AggregatedRoute aggregate(Prefix prefix, Route route, List<Route> existingRoutes, Set<Prefix> changedPrefixes) {
+        metrics.aggregations.increment();
+        AggregatedRoute aggregatedRoute = new AggregatedRoute(route.nextHop, prefix, route.attributes, new ArrayList<>());
+        includeRoutes(aggregatedRoute, route);
+        for (Route existingRoute : existingRoutes) {
+            removeRoute(existingRoute, changedPrefixes);
+            includeRoutes(aggregatedRoute, existingRoute);
+        }
+        return aggregatedRoute;
+    }
+
+    /**
+     * Includes a route, or all routes inside it if it is itself aggregated, in an aggregated route.
+     *
+     * @param aggregatedRoute the aggregated route.
+     * @param route           the route to include.
+     */
+    private void includeRoutes(AggregatedRoute aggregatedRoute, Route route) {
+        if (route instanceof AggregatedRoute) {
+            for (Route routeInside : ((AggregatedRoute) route).getRoutesInside()) {
+                includeRoutes(aggregatedRoute, routeInside);
+            }
+        } else {
+            aggregatedRoute.includeRoute(route);
+            routesAggregated.put(route, aggregatedRoute);
+        }
+    }
+
+    /**
+     * Withdraws a batch of announced routes. Routes in the table are removed directly, while every aggregated route
+     * containing a withdrawn route is disaggregated once, after which its remaining routes are added back to the table
+     * and re-aggregated where possible.
+     *
+     * @param withdrawnRoutes the announced routes to withdraw.
+     * @param changedPrefixes collects the prefixes whose routes in the table changed.
+     */
+    private void disaggregateAndWithdraw(List<Route> withdrawnRoutes, Set<Prefix> changedPrefixes) {
+        Set<AggregatedRoute> affectedRoutes = new LinkedHashSet<>();
+        for (Route route : withdrawnRoutes) {
+            AggregatedRoute aggregatedRoute = routesAggregated.remove(route);
+            if (aggregatedRoute == null) {
+                removeRoute(route, changedPrefixes);
+            } else {
+                aggregatedRoute.getRoutesInside().remove(route);
+                affectedRoutes.add(aggregatedRoute);
+            }
+        }
+
+        //Remove every affected aggregation before re-adding, so routes can't be re-aggregated into one about to go.
+        List<Route> routesToAdd = new ArrayList<>();
+        metrics.disaggregations.add(affectedRoutes.size());
+        for (AggregatedRoute aggregatedRoute : affectedRoutes) {
+            removeRoute(aggregatedRoute, changedPrefixes);
+            for (Route r : aggregatedRoute.getRoutesInside()) {
+                routesAggregated.remove(r);
+                routesToAdd.add(r);
+            }
+        }
+
+        for (Route r : routesToAdd) {
+            if (!checkAggregate(r, changedPrefixes)) {
+                addRoute(r, changedPrefixes);
+            }
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package remote;
+
+import messages.UpdateMessage;
+import messages.WithdrawMessage;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Holds the announcements and withdrawals waiting to be sent to a single neighbor (its Adj-RIB-Out) during an
+ * MRAI-style coalescing window. Within the window, a newer announcement for a prefix replaces an older one, an
+ * announcement cancels a pending withdrawal of the same prefix, and a withdrawal cancels a pending announcement,
+ * together with itself if the neighbor was never sent the prefix. The withdrawals left when the window closes are
+ * sent as a single message.
+ * <p>
+ * An update message only carries one prefix, so announcements can't be packed together, only deduplicated.
+ */
+public class AdjRibOut {
+    //Most networks put in one withdrawal message, which keeps it well within a datagram.
+    static final int MAX_WITHDRAW_NETWORKS = 500;
+
+    private final Neighbor neighbor;
+    private final Map<Prefix, UpdateMessage> pendingUpdates = new LinkedHashMap<>();
+    private final Map<Prefix, WithdrawMessage.WithdrawNetwork> pendingWithdrawals = new LinkedHashMap<>();
+    //Prefixes announced to the neighbor and not withdrawn since.
+    private final Set<Prefix> advertised = new HashSet<>();
+    //Messages that would have been sent in the current window without coalescing, counting a withdrawal as the
+    //messages of at most MAX_WITHDRAW_NETWORKS networks it is sent in.
+    private int messagesPending;
+    //Messages coalescing saved in past windows.
+    private long messagesSaved;
+
+    public AdjRibOut(Neighbor neighbor) {
+        this.neighbor = neighbor;
+    }
+
+    /**
+     * Queues an announcement of a prefix to the neighbor.
+     *
+     * @param prefix the announced prefix.
+     * @param update the update message to send to the neighbor.
+     */
+    public void announce(Prefix prefix, UpdateMessage update) {
+        messagesPending++;
+        //The neighbor replaces its route when it receives the announcement, so an earlier withdrawal isn't needed.
+        pendingWithdrawals.remove(prefix);
+        pendingUpdates.put(prefix, update);
+    }
+
+    /**
+     * Queues the withdrawal of a batch of prefixes from the neighbor, which would have been sent as one message.
+     *
+     * @param prefixes the withdrawn prefixes.
+     * @param networks the networks to put in the withdrawal message, in the same order as the prefixes.
+     */
+    public void withdraw(List<Prefix> prefixes, WithdrawMessage.WithdrawNetwork[] networks) {
+        messagesPending += Math.max(1, (networks.length + MAX_WITHDRAW_NETWORKS - 1) / MAX_WITHDRAW_NETWORKS);
+        for (int i = 0; i < prefixes.size(); i++) {
+            Prefix prefix = prefixes.get(i);
+            if (pendingUpdates.remove(prefix) != null && !advertised.contains(prefix)) {
+                //The neighbor never heard of the prefix, so neither message has to be sent.
+                continue;
+            }
+            pendingWithdrawals.put(prefix, networks[i]);
+        }
+    }
+
+    /**
+     * Returns whether anything is waiting to be sent.
+     *
+     * @return true if the Adj-RIB-Out has nothing pending.
+     */
+    public boolean isEmpty() {
+        return pendingUpdates.isEmpty() && pendingWithdrawals.isEmpty();
+    }
+
+    /**
+     * Closes the coalescing window, queueing the pending withdrawals and announcements to be sent to the neighbor.
+     *
+     * @param outbox the outbox to queue the messages in.
+     * @throws IOException If a message could not be encoded.
+     */
+    public void flush(Outbox outbox) throws IOException {
+        int messagesSent = 0;
+        if (!pendingWithdrawals.isEmpty()) {
+            List<WithdrawMessage.WithdrawNetwork> networks = new ArrayList<>(pendingWithdrawals.values());
+            for (int i = 0; i < networks.size(); i += MAX_WITHDRAW_NETWORKS) {
+                List<WithdrawMessage.WithdrawNetwork> chunk = networks.subList(i, Math.min(networks.size(), i + MAX_WITHDRAW_NETWORKS));
+                outbox.send(neighbor, new WithdrawMessage(neighbor.ourAddress, neighbor.address,
+                        chunk.toArray(new WithdrawMessage.WithdrawNetwork[0])));
+                messagesSent++;
+            }
+            advertised.removeAll(pendingWithdrawals.keySet());
+            pendingWithdrawals.clear();
+        }
+
+        for (UpdateMessage update : pendingUpdates.values()) {
+            outbox.send(neighbor, update);
+            messagesSent++;
+        }
+        advertised.addAll(pendingUpdates.keySet());
+        pendingUpdates.clear();
+
+        messagesSaved += messagesPending - messagesSent;
+        messagesPending = 0;
+    }
+
+    /**
+     * Returns the number of messages coalescing saved, i.e. the number of messages that would have been sent to the
+     * neighbor without it, less the number that were. Withdrawals too large for one message count as the messages
+     * they are split into either way, so splitting them saves nothing and costs nothing.
+     *
+     * @return the number of messages saved in the windows closed so far.
+     */
+    public long getMessagesSaved() {
+        return messagesSaved;
+    }
+}
@@ -1,7 +1,5 @@
 package remote;
 
-import messages.UpdateMessage;
-
 import java.util.List;
 
 /**
@@ -11,9 +9,8 @@ public class AggregatedRoute extends Route {
     //Routes that are aggregated into this route
     List<Route> routesInside;
 
-    public AggregatedRoute(String nextHop, String network, int netmask, int localpref, boolean selfOrigin, List<Integer> ASPath, UpdateMessage.UpdateParams.Origin origin,
-                           List<Route> routesInside) {
-        super(nextHop, network, netmask, localpref, selfOrigin, ASPath, origin);
+    public AggregatedRoute(String nextHop, Prefix prefix, Attributes attributes, List<Route> routesInside) {
+        super(nextHop, prefix, attributes);
         this.routesInside = routesInside;
     }
 
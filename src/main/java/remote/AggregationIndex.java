@@ -0,0 +1,117 @@
+package remote;
+
+import java.util.*;
+
+/**
+ * Indexes the routes in the routing table by their attributes (next hop, localpref, selfOrigin, ASPath and origin),
+ * and within each group by prefix. Routes that can be aggregated share a group, so finding one for a new route is a
+ * hash lookup followed by a tree lookup instead of a scan of the whole table.
+ * <p>
+ * Routes within a group never overlap, as overlapping routes with equal attributes are always aggregated.
+ */
+public class AggregationIndex {
+    /**
+     * The attributes a route must share with another to be aggregated with it. Attributes are interned, so they are
+     * compared by reference.
+     */
+    private static final class Key {
+        final int peer;
+        final Attributes attributes;
+
+        Key(Route route) {
+            this.peer = route.peer;
+            this.attributes = route.attributes;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o == this) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return peer == other.peer && attributes == other.attributes;
+        }
+
+        @Override
+        public int hashCode() {
+            return peer * 31 + attributes.id;
+        }
+    }
+
+    private final Map<Key, NavigableMap<Prefix, Route>> groups = new HashMap<>();
+
+    /**
+     * Adds a route in the routing table to the index.
+     *
+     * @param route the route to add.
+     */
+    public void add(Route route) {
+        groups.computeIfAbsent(new Key(route), key -> new TreeMap<>()).put(route.prefix, route);
+    }
+
+    /**
+     * Removes a route from the index.
+     *
+     * @param route the route to remove.
+     */
+    public void remove(Route route) {
+        Key key = new Key(route);
+        NavigableMap<Prefix, Route> group = groups.get(key);
+        if (group != null && group.remove(route.prefix, route) && group.isEmpty()) {
+            groups.remove(key);
+        }
+    }
+
+    /**
+     * Finds the route with the same attributes whose prefix covers the prefix of the given route.
+     *
+     * @param route the route being added.
+     * @return the covering route, or null if there is none.
+     */
+    public Route findCovering(Route route) {
+        NavigableMap<Prefix, Route> group = groups.get(new Key(route));
+        if (group == null) {
+            return null;
+        }
+        //Since routes in a group don't overlap, only the closest route at or before the prefix can cover it.
+        Map.Entry<Prefix, Route> floor = group.floorEntry(route.prefix);
+        if (floor != null && floor.getKey().contains(route.prefix)) {
+            return floor.getValue();
+        }
+        return null;
+    }
+
+    /**
+     * Finds all routes with the same attributes whose prefixes are covered by the prefix of the given route.
+     *
+     * @param route the route being added.
+     * @return the covered routes, which may be empty.
+     */
+    public List<Route> findContained(Route route) {
+        NavigableMap<Prefix, Route> group = groups.get(new Key(route));
+        if (group == null) {
+            return List.of();
+        }
+        Prefix last = new Prefix(route.prefix.last(), 32);
+        return new ArrayList<>(group.subMap(route.prefix, true, last, true).values());
+    }
+
+    /**
+     * Finds the route with the same attributes whose prefix is the sibling of the prefix of the given route, so that
+     * the two can be coalesced into their parent prefix.
+     *
+     * @param route the route being added.
+     * @return the sibling route, or null if there is none.
+     */
+    public Route findSibling(Route route) {
+        //Coalescing /1 siblings would create a default route, which is never aggregated.
+        if (route.prefix.length <= 1) {
+            return null;
+        }
+        NavigableMap<Prefix, Route> group = groups.get(new Key(route));
+        return group == null ? null : group.get(route.prefix.sibling());
+    }
+}
@@ -0,0 +1,160 @@
+package remote;
+
+import messages.UpdateMessage;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * The path attributes of a route: localpref, selfOrigin, ASPath and origin. Attribute sets are interned, so routes
+ * with equal attributes share one instance and comparing attributes is a reference comparison. Many prefixes are
+ * usually announced with a handful of distinct attribute sets, so this also saves a copy of the AS path per route.
+ * <p>
+ * Interned attribute sets are only weakly held by the table, and are dropped once no route references them.
+ */
+public final class Attributes {
+    private static final Map<Attributes, WeakReference<Attributes>> TABLE = new WeakHashMap<>();
+    private static int nextId;
+
+    //Unique number of the attribute set, for as long as it is interned.
+    public final int id;
+    public final int localpref;
+    public final boolean selfOrigin;
+    //ASNs of the path, nearest first. Must not be modified.
+    public final int[] ASPath;
+    public final UpdateMessage.UpdateParams.Origin origin;
+    //Rank of the origin in the decision process, lower is preferred.
+    public final int originRank;
+    private final int hash;
+    //The AS path with an ASN prepended, as sent to neighbors, cached for the last ASN it was requested for.
+    private List<Integer> prependedPath;
+
+    private Attributes(int id, int localpref, boolean selfOrigin, int[] ASPath, UpdateMessage.UpdateParams.Origin origin) {
+        this.id = id;
+        this.localpref = localpref;
+        this.selfOrigin = selfOrigin;
+        this.ASPath = ASPath;
+        this.origin = origin;
+        //Origins are declared in order of preference.
+        this.originRank = origin.ordinal();
+        this.hash = hash(localpref, selfOrigin, ASPath, origin);
+    }
+
+    /**
+     * Returns the interned attribute set with the given attributes, creating it if there is none.
+     *
+     * @param localpref  the localpref.
+     * @param selfOrigin whether the route is self-originated.
+     * @param ASPath     the AS path, which must not be modified afterwards.
+     * @param origin     the origin.
+     * @return the shared attribute set.
+     */
+    public static synchronized Attributes intern(int localpref, boolean selfOrigin, int[] ASPath, UpdateMessage.UpdateParams.Origin origin) {
+        Attributes candidate = new Attributes(nextId, localpref, selfOrigin, ASPath, origin);
+        WeakReference<Attributes> existing = TABLE.get(candidate);
+        Attributes attributes = existing == null ? null : existing.get();
+        if (attributes == null) {
+            attributes = candidate;
+            TABLE.put(attributes, new WeakReference<>(attributes));
+            nextId++;
+        }
+        return attributes;
+    }
+
+    /**
+     * Returns the interned attribute set with the given attributes, creating it if there is none.
+     *
+     * @param localpref  the localpref.
+     * @param selfOrigin whether the route is self-originated.
+     * @param ASPath     the AS path.
+     * @param origin     the origin.
+     * @return the shared attribute set.
+     */
+    public static Attributes intern(int localpref, boolean selfOrigin, List<Integer> ASPath, UpdateMessage.UpdateParams.Origin origin) {
+        int[] path = new int[ASPath.size()];
+        for (int i = 0; i < path.length; i++) {
+            path[i] = ASPath.get(i);
+        }
+        return intern(localpref, selfOrigin, path, origin);
+    }
+
+    /**
+     * Returns the number of attribute sets currently interned.
+     *
+     * @return the size of the interning table.
+     */
+    public static synchronized int internedCount() {
+        return TABLE.size();
+    }
+
+    /**
+     * Returns the AS path with an ASN prepended, as announced to neighbors by the AS with that number. The result is
+     * cached, so announcing a route to many neighbors builds it once.
+     *
+     * @param asn the ASN to prepend.
+     * @return the prepended AS path, which is immutable.
+     */
+    public List<Integer> prependedPath(int asn) {
+        List<Integer> path = prependedPath;
+        if (path == null || path.get(0) != asn) {
+            Integer[] asns = new Integer[ASPath.length + 1];
+            asns[0] = asn;
+            for (int i = 0; i < ASPath.length; i++) {
+                asns[i + 1] = ASPath[i];
+            }
+            path = List.of(asns);
+            prependedPath = path;
+        }
+        return path;
+    }
+
+    /**
+     * Returns the AS path as a list.
+     *
+     * @return the AS path, which is immutable.
+     */
+    public List<Integer> ASPathList() {
+        Integer[] asns = new Integer[ASPath.length];
+        for (int i = 0; i < ASPath.length; i++) {
+            asns[i] = ASPath[i];
+        }
+        return List.of(asns);
+    }
+
+    private static int hash(int localpref, boolean selfOrigin, int[] ASPath, UpdateMessage.UpdateParams.Origin origin) {
+        return ((localpref * 31 + Boolean.hashCode(selfOrigin)) * 31 + Arrays.hashCode(ASPath)) * 31 + origin.ordinal();
+    }
+
+    /**
+     * Compares the attributes themselves, which is only needed to intern them. Interned attribute sets can be
+     * compared by reference.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (o == this) {
+            return true;
+        }
+        if (!(o instanceof Attributes)) {
+            return false;
+        }
+        Attributes other = (Attributes) o;
+        return hash == other.hash
+                && localpref == other.localpref
+                && selfOrigin == other.selfOrigin
+                && origin == other.origin
+                && Arrays.equals(ASPath, other.ASPath);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return "localpref=" + localpref + " selfOrigin=" + selfOrigin + " ASPath=" + Arrays.toString(ASPath) + " origin=" + origin;
+    }
+}
@@ -0,0 +1,84 @@
+package remote;
+
+/**
+ * Records the sizes of batches of datagrams, such as how many were read from a channel per wakeup or written to a
+ * neighbor per flush. Sizes are counted in power of two buckets so recording a batch never allocates.
+ */
+public class BatchMetrics {
+    private final String name;
+    //Bucket i counts batches of size 2^i up to 2^(i+1) - 1.
+    private final long[] buckets = new long[32];
+    private long batches;
+    private long total;
+    private int max;
+
+    public BatchMetrics(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Records a batch. Empty batches are ignored.
+     *
+     * @param size the number of datagrams in the batch.
+     */
+    public void record(int size) {
+        if (size <= 0) {
+            return;
+        }
+        buckets[31 - Integer.numberOfLeadingZeros(size)]++;
+        batches++;
+        total += size;
+        max = Math.max(max, size);
+    }
+
+    /**
+     * Returns the number of batches recorded.
+     *
+     * @return the number of batches.
+     */
+    public long getBatches() {
+        return batches;
+    }
+
+    /**
+     * Returns the number of datagrams in all batches recorded.
+     *
+     * @return the total size of the batches.
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * Returns the size of the largest batch recorded.
+     *
+     * @return the largest batch size, or 0 if none were recorded.
+     */
+    public int getMax() {
+        return max;
+    }
+
+    /**
+     * Returns the number of batches recorded with a size between 2^bucket and 2^(bucket+1) - 1.
+     *
+     * @param bucket the bucket, between 0 and 31.
+     * @return the number of batches in the bucket.
+     */
+    public long getBucket(int bucket) {
+        return buckets[bucket];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(name).append(": batches=").append(batches)
+                .append(" datagrams=").append(total)
+                .append(" mean=").append(batches == 0 ? 0 : String.format("%.2f", (double) total / batches))
+                .append(" max=").append(max);
+        for (int i = 0; i < buckets.length; i++) {
+            if (buckets[i] > 0) {
+                builder.append(' ').append(1L << i).append('+').append('=').append(buckets[i]);
+            }
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,61 @@
+package remote;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * A pool of direct buffers large enough for any datagram. Messages are encoded into a buffer taken from the pool and
+ * the buffer is returned once the message has been sent, so sending doesn't allocate once the pool has warmed up.
+ * Direct buffers are used so the channel can send from them without first copying them into native memory.
+ * <p>
+ * The pool is not thread safe, each thread sending messages should have its own.
+ */
+public class BufferPool {
+    public static final int BUFFER_SIZE = 65535;
+
+    private final ArrayDeque<ByteBuffer> freeBuffers = new ArrayDeque<>();
+    private final int maxFreeBuffers;
+
+    /**
+     * Creates an empty pool.
+     *
+     * @param maxFreeBuffers the most buffers kept for reuse. Buffers released beyond this are dropped.
+     */
+    public BufferPool(int maxFreeBuffers) {
+        this.maxFreeBuffers = maxFreeBuffers;
+    }
+
+    /**
+     * Takes a cleared buffer from the pool, allocating a new one if the pool is empty.
+     *
+     * @return a buffer ready to be written to.
+     */
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = freeBuffers.pollFirst();
+        if (buffer == null) {
+            return ByteBuffer.allocateDirect(BUFFER_SIZE);
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Returns a buffer to the pool once it is no longer used.
+     *
+     * @param buffer a buffer previously taken from this pool.
+     */
+    public void release(ByteBuffer buffer) {
+        if (freeBuffers.size() < maxFreeBuffers) {
+            freeBuffers.addFirst(buffer);
+        }
+    }
+
+    /**
+     * Returns the number of buffers waiting to be reused.
+     *
+     * @return the number of free buffers.
+     */
+    public int freeCount() {
+        return freeBuffers.size();
+    }
+}
@@ -0,0 +1,122 @@
+package remote;
+
+import json.MessageCodec;
+import json.MessageHeader;
+import messages.Message;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Receives datagrams from the channels of a set of neighbors. Data messages are forwarded right away against the
+ * router's latest FIB snapshot, while control messages are copied and handed to the router's RIB thread, so a burst
+ * of updates never holds up forwarding. A router can run several workers, each owning some of its neighbors.
+ */
+public class DataPlaneWorker {
+    private final Router router;
+    private final Selector selector;
+    //Buffer every datagram is received into, reused between messages.
+    private final ByteBuffer receiveBuffer = ByteBuffer.allocateDirect(BufferPool.BUFFER_SIZE);
+    //Header of the message being received, reused between messages.
+    private final MessageHeader header = new MessageHeader();
+    private final Outbox outbox;
+    //Next hops of the destinations this worker forwarded to.
+    private final DestinationCache destinationCache;
+    //Number of datagrams read per channel wakeup, and sent per neighbor flush.
+    public final BatchMetrics receiveBatches;
+    public final BatchMetrics sendBatches;
+
+    /**
+     * Creates a worker, registering the channels of its neighbors with a new selector.
+     *
+     * @param router    the router the worker belongs to.
+     * @param name      name of the worker, used in its metrics.
+     * @param neighbors the neighbors whose channels the worker reads from.
+     * @throws IOException If the channels could not be registered.
+     */
+    public DataPlaneWorker(Router router, String name, List<Neighbor> neighbors) throws IOException {
+        this.router = router;
+        this.selector = Selector.open();
+        for (Neighbor neighbor : neighbors) {
+            neighbor.channel.configureBlocking(false);
+            neighbor.channel.register(selector, SelectionKey.OP_READ, neighbor);
+        }
+        this.receiveBatches = new BatchMetrics(name + " receive");
+        this.sendBatches = new BatchMetrics(name + " send");
+        this.outbox = new Outbox(router.getNeighbors(), sendBatches, router.metrics);
+        this.destinationCache = new DestinationCache(router.getConfig().destCacheSize, router.metrics);
+    }
+
+    /**
+     * Receives and handles messages until the thread is interrupted.
+     *
+     * @throws Exception If a message could not be handled.
+     */
+    public void run() throws Exception {
+        try (selector) {
+            while (!Thread.currentThread().isInterrupted()) {
+                selectReadyChannels();
+            }
+        }
+    }
+
+    /**
+     * Selects all ready channels, draining each of up to the receive budget of messages and handling them, then
+     * flushes the messages queued while handling them. While datagrams are still waiting for room to be sent, the
+     * select times out so they are retried.
+     *
+     * @throws Exception If a channel could not be handled.
+     */
+    private void selectReadyChannels() throws Exception {
+        int readyChannels = outbox.hasPending() ? selector.select(1) : selector.select();
+        if (readyChannels > 0) {
+            Set<SelectionKey> keys = selector.selectedKeys();
+            Iterator<SelectionKey> keyIterator = keys.iterator();
+            while (keyIterator.hasNext()) {
+                SelectionKey key = keyIterator.next();
+                if (key.isReadable()) {
+                    receiveBatches.record(drainChannel((Neighbor) key.attachment()));
+                }
+                keyIterator.remove();
+            }
+        }
+        outbox.flush();
+    }
+
+    /**
+     * Reads and handles messages from a neighbor's channel until it has none left or the receive budget is used up.
+     *
+     * @param neighbor The neighbor to read from.
+     * @return The number of messages read.
+     * @throws Exception If a message could not be handled.
+     */
+    private int drainChannel(Neighbor neighbor) throws Exception {
+        int budget = router.getConfig().receiveBudget;
+        int received = 0;
+        while (received < budget) {
+            receiveBuffer.clear();
+            if (neighbor.channel.receive(receiveBuffer) == null) {
+                break;
+            }
+            receiveBuffer.flip();
+            received++;
+
+            //Data messages are forwarded as received, so only their header has to be read.
+            boolean hasHeader = MessageCodec.peekHeader(receiveBuffer, header);
+            router.metrics.recordReceived(neighbor.id, header.type);
+            if (hasHeader && header.type == Message.MessageType.data) {
+                router.forwardData(outbox, destinationCache, receiveBuffer, header.src, header.dst);
+            } else {
+                ByteBuffer copy = ByteBuffer.allocate(receiveBuffer.remaining());
+                copy.put(receiveBuffer).flip();
+                router.submitControlMessage(copy);
+            }
+        }
+        return received;
+    }
+}
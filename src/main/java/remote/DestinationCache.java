@@ -0,0 +1,126 @@
+package remote;
+
+import java.util.Arrays;
+
+/**
+ * Caches the next hop of recently looked up addresses in front of the FIB, since data traffic mostly goes to a few
+ * hot destinations. Each thread forwarding data messages has its own cache, so it needs no locking.
+ * <p>
+ * Entries live in open-addressed int arrays and are stamped with the generation they were cached in. Whenever the
+ * version of the FIB snapshot being forwarded against changes, the generation moves on, which drops every entry at
+ * once without touching them.
+ */
+public class DestinationCache {
+    //Returned for an address that isn't cached.
+    public static final int MISS = -2;
+    //Cached for an address with no route.
+    public static final int NO_ROUTE = -1;
+    //Most slots looked at from an address's home slot, before an entry is evicted to make room.
+    private static final int MAX_PROBES = 8;
+
+    private final int[] addresses;
+    //Id of the next hop neighbor, or NO_ROUTE, of each slot.
+    private final int[] hops;
+    //Generation each slot was filled in. Slots of an earlier generation are empty.
+    private final int[] generations;
+    private final int mask;
+    //Shift taking the top bits of a hash as a slot.
+    private final int shift;
+    private int generation = 1;
+    //Version of the FIB the current generation's entries were looked up in.
+    private long fibVersion = -1;
+    private final RouterMetrics metrics;
+
+    /**
+     * Creates an empty cache.
+     *
+     * @param capacity the most addresses cached, rounded up to a power of two. 0 disables the cache.
+     * @param metrics  the router's metrics, which count hits, misses and evictions.
+     */
+    public DestinationCache(int capacity, RouterMetrics metrics) {
+        int size = capacity <= 1 ? capacity : Integer.highestOneBit(capacity - 1) << 1;
+        this.addresses = new int[size];
+        this.hops = new int[size];
+        this.generations = new int[size];
+        this.mask = size - 1;
+        this.shift = 32 - Integer.numberOfTrailingZeros(Math.max(size, 1));
+        this.metrics = metrics;
+    }
+
+    /**
+     * Looks up the cached next hop of an address. If the FIB changed since the cache was last used, every entry is
+     * dropped first.
+     *
+     * @param fibVersion version of the FIB snapshot the address is being looked up in.
+     * @param address    the address.
+     * @return the id of the next hop neighbor, NO_ROUTE if the address has no route, or MISS if it isn't cached.
+     */
+    public int get(long fibVersion, int address) {
+        if (mask < 0) {
+            return MISS;
+        }
+        if (fibVersion != this.fibVersion) {
+            this.fibVersion = fibVersion;
+            nextGeneration();
+        }
+        int slot = home(address);
+        for (int i = 0; i < MAX_PROBES; i++) {
+            int index = (slot + i) & mask;
+            if (generations[index] == generation && addresses[index] == address) {
+                metrics.destCacheHits.increment();
+                return hops[index];
+            }
+        }
+        metrics.destCacheMisses.increment();
+        return MISS;
+    }
+
+    /**
+     * Caches the next hop of an address, looked up in the FIB version last passed to get().
+     *
+     * @param address the address.
+     * @param hop     the id of the next hop neighbor, or NO_ROUTE.
+     */
+    public void put(int address, int hop) {
+        if (mask < 0) {
+            return;
+        }
+        int slot = home(address);
+        for (int i = 0; i < MAX_PROBES; i++) {
+            int index = (slot + i) & mask;
+            if (generations[index] != generation || addresses[index] == address) {
+                set(index, address, hop);
+                return;
+            }
+        }
+        //Every nearby slot is taken, so the address takes its home slot.
+        metrics.destCacheEvictions.increment();
+        set(slot, address, hop);
+    }
+
+    private void set(int index, int address, int hop) {
+        addresses[index] = address;
+        hops[index] = hop;
+        generations[index] = generation;
+    }
+
+    /**
+     * Returns the slot probing for an address starts at. Addresses are spread with a multiplicative hash, since
+     * nearby destinations differ only in their low bits, and the top bits of the product mix all of them.
+     */
+    private int home(int address) {
+        return (address * 0x9E3779B9) >>> shift & mask;
+    }
+
+    /**
+     * Starts a new generation, emptying every slot.
+     */
+    private void nextGeneration() {
+        generation++;
+        if (generation == 0) {
+            //Slots of the generation that wrapped around would look filled, so clear them for real.
+            Arrays.fill(generations, 0);
+            generation = 1;
+        }
+    }
+}
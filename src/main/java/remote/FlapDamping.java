@@ -0,0 +1,247 @@
+package remote;
+
+import messages.UpdateMessage;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Route flap damping in the style of RFC 2439. Each (neighbor, prefix) that flaps gets a penalty, raised by every
+ * withdrawal and every change of attributes, which decays exponentially with a configured half-life. Once the penalty
+ * reaches the suppress threshold, the prefix's route from that neighbor is withdrawn and later announcements of it are
+ * held back, so the flaps no longer cost any aggregation or messages to other neighbors. Once the penalty decays below
+ * the reuse threshold, the last announcement held back is used again.
+ * <p>
+ * Penalties are only decayed when a record is looked at, from the time it was last updated. A timer wheel wakes each
+ * record when it could next be reused, or forgotten once its penalty is low enough that it no longer matters. Used
+ * only by the RIB thread.
+ */
+public class FlapDamping {
+    static final double WITHDRAWAL_PENALTY = 1000;
+    static final double ATTRIBUTE_CHANGE_PENALTY = 500;
+    //Longest a route stays suppressed without flapping again, in half-lives, which caps the penalty.
+    private static final int MAX_SUPPRESS_HALF_LIVES = 4;
+
+    private final long halfLifeMillis;
+    private final double suppressThreshold;
+    private final double reuseThreshold;
+    private final double maxPenalty;
+    //Penalty below which a record that isn't suppressed is forgotten.
+    private final double forgetThreshold;
+    //Records of the prefixes that flapped, by neighbor id.
+    private final List<Map<Prefix, Record>> records = new ArrayList<>();
+    private final TimerWheel<Record> wheel;
+    private final RouterMetrics metrics;
+
+    /**
+     * The penalty of a prefix announced by a neighbor.
+     */
+    public static final class Record {
+        public final int neighborId;
+        public final Prefix prefix;
+        private double penalty;
+        //Time the penalty was last decayed, in milliseconds.
+        private long updatedMillis;
+        private boolean suppressed;
+        //Whether the record is in the timer wheel.
+        private boolean scheduled;
+        //The last announcement held back while suppressed, or null if the prefix is withdrawn.
+        public Route pendingRoute;
+        public UpdateMessage.UpdateParams pendingParams;
+
+        Record(int neighborId, Prefix prefix) {
+            this.neighborId = neighborId;
+            this.prefix = prefix;
+        }
+    }
+
+    /**
+     * Creates damping with no penalties.
+     *
+     * @param neighborCount     the number of neighbors of the router.
+     * @param halfLifeMillis    the time a penalty takes to halve.
+     * @param suppressThreshold the penalty at which a route is suppressed.
+     * @param reuseThreshold    the penalty below which a suppressed route is used again.
+     * @param metrics           the router's metrics, which count suppressed, held back and reused routes.
+     */
+    public FlapDamping(int neighborCount, long halfLifeMillis, double suppressThreshold, double reuseThreshold, RouterMetrics metrics) {
+        this.halfLifeMillis = halfLifeMillis;
+        this.suppressThreshold = suppressThreshold;
+        this.reuseThreshold = reuseThreshold;
+        this.maxPenalty = reuseThreshold * (1 << MAX_SUPPRESS_HALF_LIVES);
+        this.forgetThreshold = reuseThreshold / 2;
+        for (int i = 0; i < neighborCount; i++) {
+            records.add(new HashMap<>());
+        }
+        this.wheel = new TimerWheel<>(Math.max(1, Math.min(1000, halfLifeMillis / 64)));
+        this.metrics = metrics;
+    }
+
+    /**
+     * Records an announcement from a neighbor, penalizing it if it changes the neighbor's route for the prefix.
+     *
+     * @param neighborId    id of the neighbor.
+     * @param route         the announced route.
+     * @param params        parameters of the announcement, to forward it if it is held back and later reused.
+     * @param previousRoute the neighbor's route for the prefix in the RIB, or null if there is none.
+     * @param nowMillis     the current time in milliseconds.
+     * @return true if the route is suppressed, so it must be held back and not be in the RIB.
+     */
+    public boolean announce(int neighborId, Route route, UpdateMessage.UpdateParams params, Route previousRoute, long nowMillis) {
+        Record record = records.get(neighborId).get(route.prefix);
+        Route previous = record != null && record.suppressed ? record.pendingRoute : previousRoute;
+        if (previous != null && !previous.equals(route)) {
+            if (record == null) {
+                record = new Record(neighborId, route.prefix);
+                records.get(neighborId).put(route.prefix, record);
+            }
+            penalize(record, ATTRIBUTE_CHANGE_PENALTY, nowMillis);
+        }
+        if (record == null || !record.suppressed) {
+            return false;
+        }
+        record.pendingRoute = route;
+        record.pendingParams = params;
+        metrics.dampingHeld.increment();
+        return true;
+    }
+
+    /**
+     * Records a withdrawal from a neighbor, penalizing it if the prefix was announced.
+     *
+     * @param neighborId id of the neighbor.
+     * @param prefix     the withdrawn prefix.
+     * @param announced  whether the prefix is in the RIB, announced by the neighbor.
+     * @param nowMillis  the current time in milliseconds.
+     * @return true if the withdrawal must be applied, or false if the prefix is suppressed, so it isn't in the RIB and
+     * other neighbors were already sent a withdrawal.
+     */
+    public boolean withdraw(int neighborId, Prefix prefix, boolean announced, long nowMillis) {
+        Record record = records.get(neighborId).get(prefix);
+        if (record != null && record.suppressed) {
+            if (record.pendingRoute != null) {
+                record.pendingRoute = null;
+                record.pendingParams = null;
+                penalize(record, WITHDRAWAL_PENALTY, nowMillis);
+            }
+            metrics.dampingHeld.increment();
+            return false;
+        }
+        if (announced) {
+            if (record == null) {
+                record = new Record(neighborId, prefix);
+                records.get(neighborId).put(prefix, record);
+            }
+            penalize(record, WITHDRAWAL_PENALTY, nowMillis);
+        }
+        return true;
+    }
+
+    /**
+     * Wakes the records whose time has come, collecting the suppressed routes whose penalty has decayed enough to be
+     * used again, and forgetting the records whose penalty has decayed away.
+     *
+     * @param nowMillis the current time in milliseconds.
+     * @param reused    collects the records of the reused routes that have an announcement held back.
+     */
+    public void expire(long nowMillis, List<Record> reused) {
+        List<Record> expired = new ArrayList<>();
+        wheel.expire(nowMillis, expired);
+        for (Record record : expired) {
+            record.scheduled = false;
+            decay(record, nowMillis);
+            if (record.suppressed && record.penalty < reuseThreshold) {
+                record.suppressed = false;
+                metrics.dampingReused.increment();
+                if (record.pendingRoute != null) {
+                    reused.add(record);
+                }
+            }
+            if (!record.suppressed && record.penalty < forgetThreshold) {
+                records.get(record.neighborId).remove(record.prefix);
+            } else {
+                schedule(record);
+            }
+        }
+    }
+
+    /**
+     * Returns the time expire() next needs to be called.
+     *
+     * @return the time in milliseconds, or Long.MAX_VALUE if no record is waiting.
+     */
+    public long nextExpiryMillis() {
+        return wheel.nextExpiryMillis();
+    }
+
+    /**
+     * Returns whether a neighbor's route for a prefix is suppressed.
+     *
+     * @param neighborId id of the neighbor.
+     * @param prefix     the prefix.
+     * @return true if it is suppressed.
+     */
+    public boolean isSuppressed(int neighborId, Prefix prefix) {
+        Record record = records.get(neighborId).get(prefix);
+        return record != null && record.suppressed;
+    }
+
+    /**
+     * Returns the current penalty of a neighbor's route for a prefix.
+     *
+     * @param neighborId id of the neighbor.
+     * @param prefix     the prefix.
+     * @param nowMillis  the current time in milliseconds.
+     * @return the penalty, or 0 if the route has no record.
+     */
+    public double penalty(int neighborId, Prefix prefix, long nowMillis) {
+        Record record = records.get(neighborId).get(prefix);
+        if (record == null) {
+            return 0;
+        }
+        decay(record, nowMillis);
+        return record.penalty;
+    }
+
+    /**
+     * Adds to the penalty of a record, suppressing its route if the penalty reaches the suppress threshold.
+     */
+    private void penalize(Record record, double penalty, long nowMillis) {
+        decay(record, nowMillis);
+        record.penalty = Math.min(maxPenalty, record.penalty + penalty);
+        if (!record.suppressed && record.penalty >= suppressThreshold) {
+            record.suppressed = true;
+            metrics.dampingSuppressed.increment();
+        }
+        schedule(record);
+    }
+
+    /**
+     * Decays the penalty of a record to the given time.
+     */
+    private void decay(Record record, long nowMillis) {
+        long elapsed = nowMillis - record.updatedMillis;
+        if (elapsed > 0) {
+            record.penalty *= Math.pow(0.5, (double) elapsed / halfLifeMillis);
+        }
+        record.updatedMillis = nowMillis;
+    }
+
+    /**
+     * Puts a record in the timer wheel, for when its penalty will have decayed to the reuse threshold if it is
+     * suppressed, or to the forget threshold if not. A record penalized again before then is checked early and
+     * scheduled again.
+     */
+    private void schedule(Record record) {
+        if (record.scheduled) {
+            return;
+        }
+        double threshold = record.suppressed ? reuseThreshold : forgetThreshold;
+        long delay = record.penalty <= threshold ? 0
+                : (long) Math.ceil(halfLifeMillis * Math.log(record.penalty / threshold) / Math.log(2));
+        wheel.schedule(record, record.updatedMillis + delay + 1);
+        record.scheduled = true;
+    }
+}
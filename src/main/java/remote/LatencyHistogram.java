@@ -0,0 +1,107 @@
+package remote;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records durations in log-linear buckets, in the style of HdrHistogram: each power of two range is split into 32
+ * buckets, so percentiles are within about 3% of the true value. Recording only increments a counter, never
+ * allocates, and can be done from any thread.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BITS = 5;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    //Values below SUB_COUNT have a bucket each, then every power of two from 2^SUB_BITS to 2^62 has SUB_COUNT.
+    private static final int BUCKETS = SUB_COUNT + (63 - SUB_BITS) * SUB_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder total = new LongAdder();
+
+    /**
+     * Records a duration.
+     *
+     * @param nanos the duration in nanoseconds. Negative durations are recorded as 0.
+     */
+    public void record(long nanos) {
+        counts.incrementAndGet(bucket(Math.max(0, nanos)));
+        total.add(Math.max(0, nanos));
+    }
+
+    /**
+     * Returns the number of durations recorded.
+     *
+     * @return the number of durations.
+     */
+    public long count() {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * Returns the mean of the durations recorded.
+     *
+     * @return the mean in nanoseconds, or 0 if none were recorded.
+     */
+    public long mean() {
+        long count = count();
+        return count == 0 ? 0 : total.sum() / count;
+    }
+
+    /**
+     * Returns a percentile of the durations recorded, as the lowest value of the bucket it falls in.
+     *
+     * @param percentile the percentile, from 0 to 100.
+     * @return the duration in nanoseconds, or 0 if none were recorded.
+     */
+    public long percentile(double percentile) {
+        long[] snapshot = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            count += snapshot[i];
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        for (int i = 0; i < BUCKETS; i++) {
+            rank -= snapshot[i];
+            if (rank <= 0) {
+                return lowestValue(i);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the bucket a value is counted in.
+     *
+     * @param value the value, which must not be negative.
+     * @return the index of the bucket.
+     */
+    static int bucket(long value) {
+        if (value < SUB_COUNT) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BITS;
+        //The bits after the leading one pick the bucket within the power of two.
+        int sub = (int) (value >>> shift) & (SUB_COUNT - 1);
+        return SUB_COUNT + shift * SUB_COUNT + sub;
+    }
+
+    /**
+     * Returns the lowest value counted in a bucket.
+     *
+     * @param bucket the index of the bucket.
+     * @return the lowest value of the bucket.
+     */
+    static long lowestValue(int bucket) {
+        if (bucket < SUB_COUNT) {
+            return bucket;
+        }
+        int shift = (bucket - SUB_COUNT) / SUB_COUNT;
+        int sub = (bucket - SUB_COUNT) % SUB_COUNT;
+        return (long) (SUB_COUNT + sub) << shift;
+    }
+}
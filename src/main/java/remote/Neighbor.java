@@ -0,0 +1,57 @@
+package remote;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.channels.DatagramChannel;
+
+/**
+ * A neighboring router this router is connected to. Neighbors are created when the router starts and never change,
+ * so they can be shared freely between threads.
+ */
+public class Neighbor {
+    //Index of the neighbor, in the order its connection was given.
+    public final int id;
+    public final String address;
+    //Relationship of the neighbor to this router.
+    public final Relation relation;
+    //Address of this router on the link to the neighbor.
+    public final String ourAddress;
+    public final DatagramChannel channel;
+    //Address of the neighbor's port, which datagrams to it are sent to.
+    public final SocketAddress socketAddress;
+
+    /**
+     * Creates a neighbor, opening a channel bound to an ephemeral port to talk to it over.
+     *
+     * @param id       index of the neighbor.
+     * @param address  address of the neighbor.
+     * @param relation relationship of the neighbor to this router.
+     * @param port     port the neighbor listens on.
+     * @throws IOException If the channel could not be created.
+     */
+    public Neighbor(int id, String address, Relation relation, int port) throws IOException {
+        this.id = id;
+        this.address = address;
+        this.relation = relation;
+        this.ourAddress = Router.ourAddr(address);
+        this.channel = DatagramChannel.open();
+        this.channel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        this.socketAddress = new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+    }
+
+    /**
+     * Returns whether the neighbor is a customer of this router.
+     *
+     * @return true if the neighbor is a customer.
+     */
+    public boolean isCustomer() {
+        return relation == Relation.CUST;
+    }
+
+    @Override
+    public String toString() {
+        return address + "-" + relation.name().toLowerCase();
+    }
+}
@@ -0,0 +1,168 @@
+package remote;
+
+import json.MessageCodec;
+import messages.Message;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayDeque;
+
+/**
+ * Datagrams waiting to be sent to one neighbor. Messages are encoded back to back into chunks taken from a
+ * BufferPool, and sent in order when the queue is flushed, which the router does once per batch of received messages
+ * instead of once per message. A datagram the channel has no room for stays queued until the next flush.
+ */
+public class OutboundQueue {
+    private final BufferPool pool;
+    //Chunks holding the queued datagrams. Datagrams are written to the last chunk and sent from the first.
+    private final ArrayDeque<ByteBuffer> chunks = new ArrayDeque<>();
+    //Lengths of the queued datagrams in the order they were queued, as a ring buffer.
+    private int[] lengths = new int[64];
+    private int head;
+    private int count;
+    //Offset of the first unsent datagram in the first chunk.
+    private int readOffset;
+
+    public OutboundQueue(BufferPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Encodes a message and queues it as a datagram.
+     *
+     * @param message the message to queue.
+     * @throws IOException If the message could not be encoded.
+     */
+    public void add(Message message) throws IOException {
+        ByteBuffer chunk = tail();
+        int start = chunk.position();
+        try {
+            MessageCodec.encode(message, chunk);
+        } catch (BufferOverflowException e) {
+            chunk.position(start);
+            if (start == 0) {
+                throw e;
+            }
+            //Start a fresh chunk rather than splitting a datagram between two.
+            chunk = newChunk();
+            start = 0;
+            MessageCodec.encode(message, chunk);
+        }
+        pushLength(chunk.position() - start);
+    }
+
+    /**
+     * Queues an already encoded datagram, copying it so the buffer can be reused right away.
+     *
+     * @param packet buffer containing the datagram between its position and limit, which are left unchanged.
+     */
+    public void add(ByteBuffer packet) {
+        int length = packet.remaining();
+        ByteBuffer chunk = tail();
+        if (chunk.remaining() < length) {
+            chunk = newChunk();
+        }
+        int position = packet.position();
+        chunk.put(packet);
+        packet.position(position);
+        pushLength(length);
+    }
+
+    /**
+     * Sends queued datagrams in order until the queue is empty or the channel has no room for the next one.
+     *
+     * @param channel the channel to send on.
+     * @param address the address of the neighbor.
+     * @return the number of datagrams sent.
+     * @throws IOException If a datagram could not be sent.
+     */
+    public int flush(DatagramChannel channel, SocketAddress address) throws IOException {
+        int sent = 0;
+        while (count > 0) {
+            ByteBuffer chunk = chunks.getFirst();
+            int writePosition = chunk.position();
+            int length = lengths[head];
+            chunk.limit(readOffset + length).position(readOffset);
+            int bytesSent = channel.send(chunk, address);
+            chunk.limit(chunk.capacity()).position(writePosition);
+            if (bytesSent == 0) {
+                break;
+            }
+
+            sent++;
+            readOffset += length;
+            head = (head + 1) % lengths.length;
+            count--;
+            if (readOffset == writePosition) {
+                //Every datagram in the first chunk was sent, so reuse it if it is the only one or return it otherwise.
+                readOffset = 0;
+                if (chunks.size() > 1) {
+                    pool.release(chunks.removeFirst());
+                } else {
+                    chunk.clear();
+                }
+            }
+        }
+        return sent;
+    }
+
+    /**
+     * Returns whether any datagrams are waiting to be sent.
+     *
+     * @return true if the queue is empty.
+     */
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * Returns the number of datagrams waiting to be sent.
+     *
+     * @return the number of queued datagrams.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Returns the chunk datagrams are currently written to.
+     *
+     * @return the last chunk.
+     */
+    private ByteBuffer tail() {
+        ByteBuffer chunk = chunks.peekLast();
+        return chunk == null ? newChunk() : chunk;
+    }
+
+    /**
+     * Takes a new chunk from the pool and appends it to the queue.
+     *
+     * @return the new chunk.
+     */
+    private ByteBuffer newChunk() {
+        ByteBuffer chunk = pool.acquire();
+        chunks.addLast(chunk);
+        return chunk;
+    }
+
+    /**
+     * Records the length of a newly queued datagram, growing the ring buffer if it is full.
+     *
+     * @param length the length of the datagram.
+     */
+    private void pushLength(int length) {
+        if (count == lengths.length) {
+            int[] grown = new int[lengths.length * 2];
+            for (int i = 0; i < count; i++) {
+                grown[i] = lengths[(head + i) % lengths.length];
+            }
+            lengths = grown;
+            head = 0;
+        }
+        lengths[(head + count) % lengths.length] = length;
+        count++;
+    }
+}
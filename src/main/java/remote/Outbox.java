@@ -0,0 +1,135 @@
+package remote;
+
+import messages.Message;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * The datagrams one thread has queued for every neighbor. Each thread sending messages has its own outbox, so
+ * queueing never needs a lock; channels themselves can be sent on from any thread.
+ */
+public class Outbox {
+    private final Neighbor[] neighbors;
+    private final BufferPool pool = new BufferPool(16);
+    //Queue of each neighbor, by neighbor id.
+    private final OutboundQueue[] queues;
+    //Ids of the neighbors with datagrams queued since the last flush.
+    private final int[] pending;
+    private final boolean[] isPending;
+    private int pendingCount;
+    private final BatchMetrics sendBatches;
+    private final RouterMetrics metrics;
+
+    /**
+     * Creates an empty outbox.
+     *
+     * @param neighbors   the neighbors of the router, by id.
+     * @param sendBatches records the number of datagrams sent to a neighbor per flush.
+     */
+    public Outbox(Neighbor[] neighbors, BatchMetrics sendBatches) {
+        this(neighbors, sendBatches, new RouterMetrics(neighbors.length, false));
+    }
+
+    /**
+     * Creates an empty outbox.
+     *
+     * @param neighbors   the neighbors of the router, by id.
+     * @param sendBatches records the number of datagrams sent to a neighbor per flush.
+     * @param metrics     the router's metrics, which record the datagrams sent and how long sending took.
+     */
+    public Outbox(Neighbor[] neighbors, BatchMetrics sendBatches, RouterMetrics metrics) {
+        this.neighbors = neighbors;
+        this.queues = new OutboundQueue[neighbors.length];
+        for (int i = 0; i < neighbors.length; i++) {
+            queues[i] = new OutboundQueue(pool);
+        }
+        this.pending = new int[neighbors.length];
+        this.isPending = new boolean[neighbors.length];
+        this.sendBatches = sendBatches;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Queues a message to be sent to a neighbor on the next flush.
+     *
+     * @param neighbor the neighbor to send to.
+     * @param message  the message to send.
+     * @throws IOException If the message could not be encoded.
+     */
+    public void send(Neighbor neighbor, Message message) throws IOException {
+        queues[neighbor.id].add(message);
+        markPending(neighbor.id);
+    }
+
+    /**
+     * Queues an already encoded message to be sent to a neighbor on the next flush.
+     *
+     * @param neighbor the neighbor to send to.
+     * @param packet   buffer containing the encoded message, which can be reused once this returns.
+     */
+    public void send(Neighbor neighbor, ByteBuffer packet) {
+        queues[neighbor.id].add(packet);
+        markPending(neighbor.id);
+    }
+
+    /**
+     * Sends the datagrams queued since the last flush. Neighbors whose channel ran out of room stay pending, and
+     * the rest of their datagrams are sent on a later flush.
+     *
+     * @return true if every queued datagram was sent.
+     * @throws IOException If a datagram could not be sent.
+     */
+    public boolean flush() throws IOException {
+        int stillPending = 0;
+        for (int i = 0; i < pendingCount; i++) {
+            int id = pending[i];
+            OutboundQueue queue = queues[id];
+            long start = metrics.timed ? System.nanoTime() : 0;
+            int sent = queue.flush(neighbors[id].channel, neighbors[id].socketAddress);
+            if (metrics.timed) {
+                metrics.sendLatency.record(System.nanoTime() - start);
+            }
+            sendBatches.record(sent);
+            metrics.recordSent(id, sent);
+            if (queue.isEmpty()) {
+                isPending[id] = false;
+            } else {
+                pending[stillPending++] = id;
+            }
+        }
+        pendingCount = stillPending;
+        return pendingCount == 0;
+    }
+
+    /**
+     * Returns whether any datagrams are waiting to be sent.
+     *
+     * @return true if a flush has datagrams to send.
+     */
+    public boolean hasPending() {
+        return pendingCount > 0;
+    }
+
+    /**
+     * Returns whether datagrams to a neighbor are waiting to be sent.
+     *
+     * @param neighbor the neighbor.
+     * @return true if a flush has datagrams to send to the neighbor.
+     */
+    public boolean hasPending(Neighbor neighbor) {
+        return isPending[neighbor.id];
+    }
+
+    /**
+     * Records that a neighbor has datagrams to flush.
+     *
+     * @param id the neighbor's id.
+     */
+    private void markPending(int id) {
+        if (!isPending[id]) {
+            isPending[id] = true;
+            pending[pendingCount++] = id;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package remote;
+
+import static remote.Prefix.mask;
+
+/**
+ * A compiled import or export policy of one neighbor. The policy is a list of rules, each matching a route on one
+ * predicate and either permitting or denying it. Rules are tried in order, the first that matches decides, and a route
+ * no rule matches is permitted.
+ * <p>
+ * Rules are stored as fixed size records in a single int array: the predicate code, the action, then up to four
+ * int arguments. Evaluating a policy therefore walks an array, without string compares or allocation.
+ */
+public class Policy {
+    //Matches routes learned from a neighbor that isn't a customer. No arguments.
+    static final int MATCH_FROM_NON_CUSTOMER = 0;
+    //Matches routes within a prefix whose length is within a range. Arguments: network, length, min and max length.
+    static final int MATCH_PREFIX = 1;
+    //Matches routes whose AS path contains an AS. Argument: the ASN.
+    static final int MATCH_AS_PATH_CONTAINS = 2;
+    //Matches routes whose AS path is longer than a limit. Argument: the limit.
+    static final int MATCH_AS_PATH_LONGER = 3;
+    //Matches routes that would take the neighbor over a number of announced prefixes. Argument: the limit.
+    static final int MATCH_PREFIX_LIMIT = 4;
+
+    static final int DENY = 0;
+    static final int PERMIT = 1;
+
+    static final int RULE_SIZE = 6;
+
+    public static final Policy PERMIT_ALL = new Policy(new int[0]);
+
+    private final int[] rules;
+
+    /**
+     * Creates a policy from compiled rules.
+     *
+     * @param rules the rules, RULE_SIZE ints each.
+     */
+    Policy(int[] rules) {
+        this.rules = rules;
+    }
+
+    /**
+     * Returns whether the policy permits a route.
+     *
+     * @param network     network address of the route's prefix.
+     * @param length      length of the route's prefix.
+     * @param ASPath      the route's AS path, or null if it has none, as for a withdrawal. AS path rules never match a
+     *                    route without one.
+     * @param from        relationship of the neighbor the route was learned from.
+     * @param prefixCount number of prefixes the neighbor will have announced if the route is accepted.
+     * @return true if the route is permitted.
+     */
+    public boolean permits(int network, int length, int[] ASPath, Relation from, int prefixCount) {
+        for (int i = 0; i < rules.length; i += RULE_SIZE) {
+            boolean matched;
+            switch (rules[i]) {
+                case MATCH_FROM_NON_CUSTOMER:
+                    matched = from != Relation.CUST;
+                    break;
+                case MATCH_PREFIX:
+                    matched = length >= rules[i + 4] && length <= rules[i + 5] && mask(network, rules[i + 3]) == rules[i + 2];
+                    break;
+                case MATCH_AS_PATH_CONTAINS:
+                    matched = ASPath != null && contains(ASPath, rules[i + 2]);
+                    break;
+                case MATCH_AS_PATH_LONGER:
+                    matched = ASPath != null && ASPath.length > rules[i + 2];
+                    break;
+                case MATCH_PREFIX_LIMIT:
+                    matched = prefixCount > rules[i + 2];
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown predicate " + rules[i]);
+            }
+            if (matched) {
+                return rules[i + 1] == PERMIT;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns whether the policy has no rules, and so permits every route.
+     *
+     * @return true if the policy permits everything.
+     */
+    public boolean permitsAll() {
+        return rules.length == 0;
+    }
+
+    /**
+     * Returns whether an AS path contains an AS.
+     */
+    private static boolean contains(int[] ASPath, int asn) {
+        for (int pathAsn : ASPath) {
+            if (pathAsn == asn) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,221 @@
+package remote;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The import and export policies of a router's neighbors, loaded from a policy file and compiled into a Policy per
+ * neighbor and direction. Each line of the file is a rule:
+ * <pre>
+ * # neighbor  direction  action  predicate
+ * 10.0.0.2    import     deny    prefix 192.168.0.0/16 le 24
+ * *           export     deny    as-path-contains 666
+ * 10.0.0.2    import     deny    as-path-longer 10
+ * 10.0.0.2    import     deny    max-prefix 1000
+ * </pre>
+ * The neighbor is an address, or * for every neighbor. A prefix predicate matches prefixes within the given prefix,
+ * of exactly its length unless ge and/or le give a range of lengths. Rules of a neighbor are tried in the order they
+ * appear in the file, after the customer/peer/provider export rule, which always applies.
+ */
+public class PolicyConfig {
+    /**
+     * A rule in the file, along with the neighbor and direction it applies to.
+     */
+    private static final class Rule {
+        final String neighbor;
+        final boolean isImport;
+        final int[] code;
+
+        Rule(String neighbor, boolean isImport, int[] code) {
+            this.neighbor = neighbor;
+            this.isImport = isImport;
+            this.code = code;
+        }
+    }
+
+    private final List<Rule> rules = new ArrayList<>();
+
+    /**
+     * Creates a configuration with no rules, so only the customer/peer/provider export rule applies.
+     */
+    public PolicyConfig() {
+    }
+
+    /**
+     * Loads a configuration from a policy file.
+     *
+     * @param file the policy file.
+     * @return the configuration.
+     * @throws IOException              If the file could not be read.
+     * @throws IllegalArgumentException If a line of the file is not a valid rule.
+     */
+    public static PolicyConfig load(Path file) throws IOException {
+        PolicyConfig config = new PolicyConfig();
+        List<String> lines = Files.readAllLines(file);
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).strip();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            try {
+                config.rules.add(parseRule(line.split("\\s+")));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException(file + ":" + (i + 1) + ": " + e.getMessage(), e);
+            }
+        }
+        return config;
+    }
+
+    /**
+     * Parses and compiles one rule.
+     *
+     * @param words the words of the rule's line.
+     * @return the rule.
+     */
+    private static Rule parseRule(String[] words) {
+        if (words.length < 5) {
+            throw new IllegalArgumentException("Expected: <neighbor> <import|export> <permit|deny> <predicate> <argument>");
+        }
+        boolean isImport;
+        switch (words[1]) {
+            case "import":
+                isImport = true;
+                break;
+            case "export":
+                isImport = false;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown direction " + words[1]);
+        }
+        int action;
+        switch (words[2]) {
+            case "permit":
+                action = Policy.PERMIT;
+                break;
+            case "deny":
+                action = Policy.DENY;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown action " + words[2]);
+        }
+
+        int[] code = new int[Policy.RULE_SIZE];
+        code[1] = action;
+        switch (words[3]) {
+            case "prefix":
+                parsePrefixMatch(words, code);
+                break;
+            case "as-path-contains":
+                code[0] = Policy.MATCH_AS_PATH_CONTAINS;
+                code[2] = Integer.parseInt(words[4]);
+                break;
+            case "as-path-longer":
+                code[0] = Policy.MATCH_AS_PATH_LONGER;
+                code[2] = Integer.parseInt(words[4]);
+                break;
+            case "max-prefix":
+                if (!isImport) {
+                    throw new IllegalArgumentException("max-prefix only applies to imports");
+                }
+                code[0] = Policy.MATCH_PREFIX_LIMIT;
+                code[2] = Integer.parseInt(words[4]);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown predicate " + words[3]);
+        }
+        return new Rule(words[0], isImport, code);
+    }
+
+    /**
+     * Compiles a prefix predicate, of the form "prefix a.b.c.d/len [ge n] [le n]".
+     *
+     * @param words the words of the rule's line.
+     * @param code  the rule to fill in.
+     */
+    private static void parsePrefixMatch(String[] words, int[] code) {
+        String[] prefix = words[4].split("/");
+        int length = Integer.parseInt(prefix[1]);
+        int min = length;
+        int max = length;
+        boolean hasRange = false;
+        for (int i = 5; i + 1 < words.length; i += 2) {
+            int value = Integer.parseInt(words[i + 1]);
+            if (words[i].equals("ge")) {
+                min = value;
+                if (!hasRange) {
+                    max = 32;
+                }
+            } else if (words[i].equals("le")) {
+                max = value;
+            } else {
+                throw new IllegalArgumentException("Unknown prefix option " + words[i]);
+            }
+            hasRange = true;
+        }
+        if (length < 0 || length > 32 || min < length || max < min || max > 32) {
+            throw new IllegalArgumentException("Invalid prefix range " + words[4]);
+        }
+
+        code[0] = Policy.MATCH_PREFIX;
+        code[2] = Prefix.mask(Prefix.parseAddress(prefix[0]), length);
+        code[3] = length;
+        code[4] = min;
+        code[5] = max;
+    }
+
+    /**
+     * Compiles the import policy of a neighbor.
+     *
+     * @param neighbor the neighbor.
+     * @return the policy routes learned from the neighbor must pass.
+     */
+    public Policy importPolicy(Neighbor neighbor) {
+        return compile(neighbor, true, new ArrayList<>());
+    }
+
+    /**
+     * Compiles the export policy of a neighbor. Unless the neighbor is a customer, it starts by denying routes
+     * learned from neighbors that aren't customers.
+     *
+     * @param neighbor the neighbor.
+     * @return the policy routes sent to the neighbor must pass.
+     */
+    public Policy exportPolicy(Neighbor neighbor) {
+        List<int[]> code = new ArrayList<>();
+        if (neighbor.relation != Relation.CUST) {
+            int[] relationRule = new int[Policy.RULE_SIZE];
+            relationRule[0] = Policy.MATCH_FROM_NON_CUSTOMER;
+            relationRule[1] = Policy.DENY;
+            code.add(relationRule);
+        }
+        return compile(neighbor, false, code);
+    }
+
+    /**
+     * Compiles the rules of a neighbor in one direction after some initial rules.
+     *
+     * @param neighbor the neighbor.
+     * @param isImport whether to compile the import or export rules.
+     * @param code     the rules to start with.
+     * @return the compiled policy.
+     */
+    private Policy compile(Neighbor neighbor, boolean isImport, List<int[]> code) {
+        for (Rule rule : rules) {
+            if (rule.isImport == isImport && (rule.neighbor.equals("*") || rule.neighbor.equals(neighbor.address))) {
+                code.add(rule.code);
+            }
+        }
+        if (code.isEmpty()) {
+            return Policy.PERMIT_ALL;
+        }
+
+        int[] rules = new int[code.size() * Policy.RULE_SIZE];
+        for (int i = 0; i < code.size(); i++) {
+            System.arraycopy(code.get(i), 0, rules, i * Policy.RULE_SIZE, Policy.RULE_SIZE);
+        }
+        return new Policy(rules);
+    }
+}
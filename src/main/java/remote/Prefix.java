@@ -0,0 +1,198 @@
+package remote;
+
+/**
+ * Represents an IPv4 prefix as an int-encoded network address and a prefix length. All operations are done with
+ * bit arithmetic; dotted-quad strings are only parsed and produced at the JSON boundary.
+ */
+public final class Prefix implements Comparable<Prefix> {
+    public final int network;
+    public final int length;
+
+    /**
+     * Creates a prefix, masking off any host bits of the network address.
+     *
+     * @param network the int-encoded network address.
+     * @param length  the prefix length, between 0 and 32.
+     */
+    public Prefix(int network, int length) {
+        this.network = mask(network, length);
+        this.length = length;
+    }
+
+    /**
+     * Parses a prefix from the network and netmask fields of a message.
+     *
+     * @param network the network address in the format of an IP address.
+     * @param netmask the netmask in the format of an IP address.
+     * @return the parsed prefix.
+     */
+    public static Prefix parse(String network, String netmask) {
+        return new Prefix(parseAddress(network), Integer.bitCount(parseAddress(netmask)));
+    }
+
+    /**
+     * Converts an IP address to its int encoding, with the first octet in the most significant byte.
+     *
+     * @param ip the IP address to convert.
+     * @return the int representation of the IP address.
+     */
+    public static int parseAddress(String ip) {
+        int address = 0;
+        int octet = 0;
+        for (int i = 0; i < ip.length(); i++) {
+            char c = ip.charAt(i);
+            if (c == '.') {
+                address = (address << 8) | octet;
+                octet = 0;
+            } else {
+                octet = octet * 10 + (c - '0');
+            }
+        }
+        return (address << 8) | octet;
+    }
+
+    /**
+     * Converts an int-encoded address to the format of an IP address.
+     *
+     * @param address the address to convert.
+     * @return the address as a dotted quad.
+     */
+    public static String formatAddress(int address) {
+        return (address >>> 24) + "." + ((address >>> 16) & 0xFF) + "." + ((address >>> 8) & 0xFF) + "." + (address & 0xFF);
+    }
+
+    /**
+     * Masks an address down to its first length bits.
+     *
+     * @param address the address to mask.
+     * @param length  the number of leading bits to keep.
+     * @return the masked address.
+     */
+    public static int mask(int address, int length) {
+        return length == 0 ? 0 : address & (-1 << (32 - length));
+    }
+
+    /**
+     * Returns the netmask of this prefix as an int.
+     *
+     * @return the int-encoded netmask.
+     */
+    public int netmask() {
+        return mask(-1, length);
+    }
+
+    /**
+     * Returns the last address covered by this prefix.
+     *
+     * @return the int-encoded broadcast address.
+     */
+    public int last() {
+        return network | ~netmask();
+    }
+
+    /**
+     * Returns whether an address falls within this prefix.
+     *
+     * @param address the int-encoded address.
+     * @return true if the address is covered by this prefix.
+     */
+    public boolean contains(int address) {
+        return mask(address, length) == network;
+    }
+
+    /**
+     * Returns whether another prefix is equal to or more specific than this prefix.
+     *
+     * @param other the other prefix.
+     * @return true if every address of other is covered by this prefix.
+     */
+    public boolean contains(Prefix other) {
+        return other.length >= length && contains(other.network);
+    }
+
+    /**
+     * Returns whether the address range of another prefix directly follows or precedes this one.
+     *
+     * @param other the other prefix.
+     * @return true if the two prefixes are adjacent.
+     */
+    public boolean adjacent(Prefix other) {
+        return (last() != -1 && last() + 1 == other.network) || (other.last() != -1 && other.last() + 1 == network);
+    }
+
+    /**
+     * Returns the most specific prefix covering both this prefix and another.
+     *
+     * @param other the other prefix.
+     * @return the smallest common supernet.
+     */
+    public Prefix supernet(Prefix other) {
+        int common = Math.min(Math.min(length, other.length), Integer.numberOfLeadingZeros(network ^ other.network));
+        return new Prefix(network, common);
+    }
+
+    /**
+     * Returns the prefix one bit shorter than this prefix, which covers this prefix and its sibling.
+     *
+     * @return the parent prefix.
+     */
+    public Prefix parent() {
+        return new Prefix(network, length - 1);
+    }
+
+    /**
+     * Returns the prefix of the same length that differs from this prefix only in its last bit, i.e. the other half
+     * of the parent prefix.
+     *
+     * @return the sibling prefix.
+     */
+    public Prefix sibling() {
+        return new Prefix(network ^ (1 << (32 - length)), length);
+    }
+
+    /**
+     * Returns the network address in the format of an IP address.
+     *
+     * @return the network address as a dotted quad.
+     */
+    public String networkString() {
+        return formatAddress(network);
+    }
+
+    /**
+     * Returns the netmask in the format of an IP address.
+     *
+     * @return the netmask as a dotted quad.
+     */
+    public String netmaskString() {
+        return formatAddress(netmask());
+    }
+
+    @Override
+    public int compareTo(Prefix other) {
+        int compare = Integer.compareUnsigned(network, other.network);
+        return compare != 0 ? compare : Integer.compare(length, other.length);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == this) {
+            return true;
+        }
+        if (!(o instanceof Prefix)) {
+            return false;
+        }
+        Prefix other = (Prefix) o;
+        return network == other.network && length == other.length;
+    }
+
+    @Override
+    public int hashCode() {
+        return network * 31 + length;
+    }
+
+    @Override
+    public String toString() {
+        return networkString() + "/" + length;
+    }
+}
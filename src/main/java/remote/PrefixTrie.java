@@ -0,0 +1,231 @@
+package remote;
+
+import static remote.Prefix.mask;
+
+/**
+ * A path-compressed binary trie (Patricia trie) mapping IPv4 prefixes to values. Prefixes are keyed on their
+ * int-encoded network address and prefix length, and lookups walk at most 32 levels without allocating.
+ * <p>
+ * Nodes are never modified once created: a change copies only the nodes on the path to the changed prefix and shares
+ * the rest of the trie. This makes {@link #snapshot()} constant time, and a snapshot can be read from other threads
+ * while this trie keeps changing, without either side taking a lock.
+ *
+ * @param <V> type of the value stored for each prefix.
+ */
+public class PrefixTrie<V> {
+    /**
+     * A node of the trie. Internal nodes created by splits have no value.
+     */
+    private static class Node<V> {
+        final int key;
+        final int length;
+        final V value;
+        final Node<V> zero;
+        final Node<V> one;
+
+        Node(int key, int length, V value, Node<V> zero, Node<V> one) {
+            this.key = key;
+            this.length = length;
+            this.value = value;
+            this.zero = zero;
+            this.one = one;
+        }
+
+        Node<V> child(int bit) {
+            return bit == 0 ? zero : one;
+        }
+
+        Node<V> withChild(int bit, Node<V> node) {
+            return bit == 0 ? new Node<>(key, length, value, node, one) : new Node<>(key, length, value, zero, node);
+        }
+
+        Node<V> withValue(V value) {
+            return new Node<>(key, length, value, zero, one);
+        }
+    }
+
+    private Node<V> root;
+    private int size;
+    //Number of changes made to the trie, carried over to its snapshots.
+    private long version;
+
+    /**
+     * Returns the bit of an address at the given position, counting from the most significant bit.
+     */
+    private static int bit(int address, int position) {
+        return (address >>> (31 - position)) & 1;
+    }
+
+    /**
+     * Returns the length of the common prefix of two prefixes.
+     */
+    private static int commonLength(int key1, int length1, int key2, int length2) {
+        return Math.min(Math.min(length1, length2), Integer.numberOfLeadingZeros(key1 ^ key2));
+    }
+
+    /**
+     * Returns the value stored for exactly the given prefix.
+     *
+     * @param network the network address of the prefix.
+     * @param length  the prefix length.
+     * @return the value stored for the prefix, or null if there is none.
+     */
+    public V get(int network, int length) {
+        int key = mask(network, length);
+        Node<V> node = root;
+        while (node != null && node.length <= length) {
+            if (mask(key, node.length) != node.key) {
+                return null;
+            }
+            if (node.length == length) {
+                return node.value;
+            }
+            node = node.child(bit(key, node.length));
+        }
+        return null;
+    }
+
+    /**
+     * Stores a value for the given prefix, replacing any existing value.
+     *
+     * @param network the network address of the prefix.
+     * @param length  the prefix length.
+     * @param value   the value to store, must not be null.
+     */
+    public void put(int network, int length, V value) {
+        int key = mask(network, length);
+        if (get(key, length) == null) {
+            size++;
+        }
+        root = put(root, key, length, value);
+        version++;
+    }
+
+    /**
+     * Stores a value below a node, copying the nodes on the path to it.
+     *
+     * @return the node replacing the given node.
+     */
+    private static <V> Node<V> put(Node<V> node, int key, int length, V value) {
+        if (node == null) {
+            return new Node<>(key, length, value, null, null);
+        }
+
+        int common = commonLength(key, length, node.key, node.length);
+        if (common < node.length) {
+            //The new prefix diverges from this node, so split it at the common prefix.
+            Node<V> split;
+            if (common == length) {
+                split = new Node<>(key, length, value, null, null);
+            } else {
+                split = new Node<V>(mask(key, common), common, null, null, null)
+                        .withChild(bit(key, common), new Node<>(key, length, value, null, null));
+            }
+            return split.withChild(bit(node.key, common), node);
+        }
+
+        if (length == node.length) {
+            return node.withValue(value);
+        }
+
+        int bit = bit(key, node.length);
+        return node.withChild(bit, put(node.child(bit), key, length, value));
+    }
+
+    /**
+     * Removes the value stored for the given prefix, compressing any nodes left without a purpose.
+     *
+     * @param network the network address of the prefix.
+     * @param length  the prefix length.
+     * @return the value that was removed, or null if there was none.
+     */
+    public V remove(int network, int length) {
+        int key = mask(network, length);
+        V removed = get(key, length);
+        if (removed != null) {
+            root = remove(root, key, length);
+            size--;
+            version++;
+        }
+        return removed;
+    }
+
+    /**
+     * Removes the value stored below a node, which must be there, copying the nodes on the path to it.
+     *
+     * @return the node replacing the given node, which may be null.
+     */
+    private static <V> Node<V> remove(Node<V> node, int key, int length) {
+        if (node.length == length) {
+            if (node.zero != null && node.one != null) {
+                //Still needed as a branching point.
+                return node.withValue(null);
+            }
+            return node.zero != null ? node.zero : node.one;
+        }
+
+        int bit = bit(key, node.length);
+        Node<V> child = remove(node.child(bit), key, length);
+        if (child == null && node.value == null) {
+            //This node is now a valueless node with a single child, which can be spliced out.
+            return node.child(bit ^ 1);
+        }
+        return node.withChild(bit, child);
+    }
+
+    /**
+     * Finds the value of the longest prefix containing the given address.
+     *
+     * @param address the address to look up.
+     * @return the value of the longest matching prefix, or null if no prefix matches.
+     */
+    public V longestMatch(int address) {
+        V best = null;
+        Node<V> node = root;
+        while (node != null) {
+            if (mask(address, node.length) != node.key) {
+                break;
+            }
+            if (node.value != null) {
+                best = node.value;
+            }
+            if (node.length == 32) {
+                break;
+            }
+            node = node.child(bit(address, node.length));
+        }
+        return best;
+    }
+
+    /**
+     * Returns a snapshot of this trie, which later changes to this trie don't affect. Taking a snapshot doesn't copy
+     * anything, and the snapshot can be safely read by other threads once published to them.
+     *
+     * @return the snapshot.
+     */
+    public PrefixTrie<V> snapshot() {
+        PrefixTrie<V> snapshot = new PrefixTrie<>();
+        snapshot.root = root;
+        snapshot.size = size;
+        snapshot.version = version;
+        return snapshot;
+    }
+
+    /**
+     * Returns the number of prefixes with a value in this trie.
+     *
+     * @return the number of prefixes stored.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of changes made to this trie, or to the trie it is a snapshot of before it was taken.
+     *
+     * @return the version of the trie.
+     */
+    public long version() {
+        return version;
+    }
+}
@@ -0,0 +1,21 @@
+package remote;
+
+/**
+ * The business relationship of a neighbor to this router.
+ */
+public enum Relation {
+    CUST,
+    PEER,
+    PROV;
+
+    /**
+     * Parses a relationship from its name in a connection argument.
+     *
+     * @param name one of "cust", "peer" or "prov".
+     * @return the relationship.
+     * @throws IllegalArgumentException If the name is not a known relationship.
+     */
+    public static Relation parse(String name) {
+        return valueOf(name.toUpperCase());
+    }
+}
@@ -0,0 +1,459 @@
+package remote;
+
+import messages.UpdateMessage;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.stream.Stream;
+
+/**
+ * Persists the routing table, so a restarted router can forward again right away instead of waiting for every
+ * neighbor to announce its routes again. Every announcement and withdrawal applied to the RIB is appended to a
+ * memory-mapped journal, and the whole table, aggregated routes included, is regularly saved in a snapshot, after
+ * which the journal written before it is deleted. On startup the latest snapshot is loaded and the journal written
+ * after it is replayed.
+ * <p>
+ * The RIB thread only encodes records into a batch, which it hands over once per pass. Batches are copied into the
+ * journal and snapshots are written by a separate journal thread, so disk IO never holds up the RIB thread or the
+ * forwarding threads. Journal pages belong to the OS once copied, so they survive the process being killed; they are
+ * only forced to disk when a segment is finished and on shutdown.
+ * <p>
+ * The journal is split into numbered segment files. Each record is an int length, then a type byte and its fields; a
+ * batch becomes visible at once, as the length of its first record is written last. A snapshot numbered n holds the
+ * table as it was before segment n was started.
+ */
+public class RibJournal {
+    private static final int SNAPSHOT_MAGIC = 0x52494253;
+    private static final byte ANNOUNCE = 1;
+    private static final byte WITHDRAW = 2;
+    private static final byte ROUTE = 0;
+    private static final byte AGGREGATED_ROUTE = 1;
+    //Size of a journal segment, which is mapped whole. A batch is never split across segments.
+    static final int SEGMENT_SIZE = 16 << 20;
+    //Task that makes the journal thread stop.
+    private static final JournalTask STOP = () -> {
+    };
+
+    private final Path directory;
+    private final int snapshotRecords;
+    //Batches and snapshots waiting for the journal thread.
+    private final BlockingQueue<JournalTask> tasks = new LinkedBlockingQueue<>();
+
+    //Records of the current batch, encoded by the RIB thread.
+    private ByteBuffer batch = ByteBuffer.allocate(1 << 16);
+    //Records handed over since the last snapshot was asked for.
+    private int recordsSinceSnapshot;
+
+    //Segment the journal thread appends to, its number and the mapping of its file.
+    private FileChannel segmentChannel;
+    private int segmentNumber;
+    private MappedByteBuffer segment;
+
+    /**
+     * A task run by the journal thread.
+     */
+    private interface JournalTask {
+        void run() throws IOException;
+    }
+
+    /**
+     * Receives the routes read back from a snapshot and the journal when the router starts.
+     */
+    public interface Replay {
+        /**
+         * Restores a route in the routing table as it was saved, without aggregating it again.
+         *
+         * @param route the route, which is an AggregatedRoute holding its announced routes if it was aggregated.
+         */
+        void restore(Route route);
+
+        /**
+         * Applies an announcement from the journal.
+         *
+         * @param route the announced route.
+         */
+        void announce(Route route);
+
+        /**
+         * Applies a withdrawal from the journal.
+         *
+         * @param neighbor address of the neighbor the prefixes were announced by.
+         * @param prefixes the withdrawn prefixes.
+         */
+        void withdraw(String neighbor, List<Prefix> prefixes);
+    }
+
+    /**
+     * Opens the journal in a directory, replaying the latest snapshot and the journal written after it, then starts a
+     * new segment to append to.
+     *
+     * @param directory       the directory, which is created if missing.
+     * @param snapshotRecords the number of records after which a snapshot is due.
+     * @param replay          receives the saved routes.
+     * @throws IOException If the directory could not be read or a new segment created.
+     */
+    public RibJournal(Path directory, int snapshotRecords, Replay replay) throws IOException {
+        this.directory = directory;
+        this.snapshotRecords = snapshotRecords;
+        Files.createDirectories(directory);
+
+        int snapshot = -1;
+        for (int number : numbers("snapshot-")) {
+            snapshot = Math.max(snapshot, number);
+        }
+        if (snapshot >= 0) {
+            readSnapshot(file("snapshot-", snapshot), replay);
+        }
+        int last = snapshot;
+        for (int number : numbers("journal-")) {
+            if (number >= snapshot) {
+                readSegment(file("journal-", number), replay);
+            }
+            last = Math.max(last, number);
+        }
+        openSegment(last + 1, SEGMENT_SIZE);
+    }
+
+    /**
+     * Appends an announcement applied to the RIB to the current batch.
+     *
+     * @param route the announced route.
+     */
+    public void announce(Route route) {
+        int start = startRecord(ANNOUNCE, routeSize(route));
+        putRoute(batch, route);
+        endRecord(start);
+    }
+
+    /**
+     * Appends a withdrawal applied to the RIB to the current batch.
+     *
+     * @param neighbor address of the neighbor the prefixes were announced by.
+     * @param prefixes the withdrawn prefixes.
+     */
+    public void withdraw(String neighbor, List<Prefix> prefixes) {
+        int start = startRecord(WITHDRAW, 8 + prefixes.size() * 5);
+        batch.putInt(Prefix.parseAddress(neighbor));
+        batch.putInt(prefixes.size());
+        for (Prefix prefix : prefixes) {
+            batch.putInt(prefix.network);
+            batch.put((byte) prefix.length);
+        }
+        endRecord(start);
+    }
+
+    /**
+     * Hands the current batch to the journal thread.
+     */
+    public void commit() {
+        if (batch.position() == 0) {
+            return;
+        }
+        byte[] records = Arrays.copyOf(batch.array(), batch.position());
+        batch.clear();
+        tasks.add(() -> append(records));
+    }
+
+    /**
+     * Returns whether enough records were journaled since the last snapshot that a new one is due.
+     *
+     * @return true if a snapshot should be taken.
+     */
+    public boolean isSnapshotDue() {
+        return recordsSinceSnapshot >= snapshotRecords;
+    }
+
+    /**
+     * Hands the current batch, then a copy of the routing table, to the journal thread to be saved as a snapshot.
+     * Records committed after this go in a new segment, and the ones before it are deleted once the snapshot is written.
+     *
+     * @param routes the routes in the routing table, which must not change afterwards.
+     */
+    public void snapshot(List<Route> routes) {
+        commit();
+        recordsSinceSnapshot = 0;
+        tasks.add(() -> {
+            int number = segmentNumber + 1;
+            openSegment(number, SEGMENT_SIZE);
+            writeSnapshot(number, routes);
+        });
+    }
+
+    /**
+     * Writes batches and snapshots as they are handed over, until the thread is interrupted or the journal is
+     * closed. What was handed over before that is still written.
+     *
+     * @throws IOException If the journal could not be written.
+     */
+    public void run() throws IOException {
+        try {
+            JournalTask task;
+            while ((task = tasks.take()) != STOP) {
+                task.run();
+            }
+        } catch (InterruptedException e) {
+            JournalTask task;
+            while ((task = tasks.poll()) != null && task != STOP) {
+                task.run();
+            }
+        }
+        segment.force();
+        segmentChannel.close();
+    }
+
+    /**
+     * Makes run() return once everything handed over so far is written.
+     */
+    public void close() {
+        tasks.add(STOP);
+    }
+
+    /**
+     * Starts a record in the batch, growing it if needed.
+     *
+     * @return the position of the record, where its length is written once it is complete.
+     */
+    private int startRecord(byte type, int size) {
+        if (batch.remaining() < size + 5) {
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(batch.capacity() * 2, batch.position() + size + 5));
+            batch.flip();
+            grown.put(batch);
+            batch = grown;
+        }
+        int start = batch.position();
+        batch.putInt(0);
+        batch.put(type);
+        return start;
+    }
+
+    private void endRecord(int start) {
+        batch.putInt(start, batch.position() - start - 4);
+        recordsSinceSnapshot++;
+    }
+
+    /**
+     * Copies a batch into the current segment, starting a new one if it doesn't fit. Runs on the journal thread.
+     */
+    private void append(byte[] records) throws IOException {
+        //A zero length after the last record marks the end of the segment.
+        if (segment.remaining() < records.length + 4) {
+            openSegment(segmentNumber + 1, Math.max(SEGMENT_SIZE, records.length + 4));
+        }
+        int start = segment.position();
+        segment.position(start + 4);
+        segment.put(records, 4, records.length - 4);
+        segment.putInt(start, ByteBuffer.wrap(records).getInt(0));
+    }
+
+    /**
+     * Finishes the current segment, if any, and maps a new, empty one.
+     */
+    private void openSegment(int number, int size) throws IOException {
+        if (segment != null) {
+            segment.force();
+            segmentChannel.close();
+        }
+        try (RandomAccessFile file = new RandomAccessFile(file("journal-", number).toFile(), "rw")) {
+            file.setLength(size);
+        }
+        segmentChannel = FileChannel.open(file("journal-", number), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segment = segmentChannel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        segmentNumber = number;
+    }
+
+    /**
+     * Writes a snapshot, replacing the files it makes obsolete. The snapshot is written to a temporary file first, so
+     * a snapshot file is always complete.
+     */
+    private void writeSnapshot(int number, List<Route> routes) throws IOException {
+        Path temporary = directory.resolve("snapshot.tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocate(1 << 20);
+            buffer.putInt(SNAPSHOT_MAGIC);
+            buffer.putInt(routes.size());
+            for (Route route : routes) {
+                buffer = ensure(channel, buffer, 5 + routeSize(route));
+                if (route instanceof AggregatedRoute) {
+                    List<Route> routesInside = ((AggregatedRoute) route).getRoutesInside();
+                    buffer.put(AGGREGATED_ROUTE);
+                    putRoute(buffer, route);
+                    buffer.putInt(routesInside.size());
+                    for (Route routeInside : routesInside) {
+                        buffer = ensure(channel, buffer, routeSize(routeInside));
+                        putRoute(buffer, routeInside);
+                    }
+                } else {
+                    buffer.put(ROUTE);
+                    putRoute(buffer, route);
+                }
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, file("snapshot-", number), StandardCopyOption.ATOMIC_MOVE);
+
+        for (int older : numbers("snapshot-")) {
+            if (older < number) {
+                Files.deleteIfExists(file("snapshot-", older));
+            }
+        }
+        for (int older : numbers("journal-")) {
+            if (older < number) {
+                Files.deleteIfExists(file("journal-", older));
+            }
+        }
+    }
+
+    /**
+     * Writes out a snapshot buffer if it doesn't have room for the given number of bytes.
+     *
+     * @return the buffer to go on writing to, which is larger if the bytes don't fit even in an empty one.
+     */
+    private static ByteBuffer ensure(FileChannel channel, ByteBuffer buffer, int size) throws IOException {
+        if (buffer.remaining() >= size) {
+            return buffer;
+        }
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+        return buffer.capacity() >= size ? buffer : ByteBuffer.allocate(size);
+    }
+
+    /**
+     * Reads a snapshot, restoring each route it holds.
+     */
+    private static void readSnapshot(Path path, Replay replay) throws IOException {
+        ByteBuffer buffer = map(path);
+        if (buffer.getInt() != SNAPSHOT_MAGIC) {
+            throw new IOException("Not a RIB snapshot: " + path);
+        }
+        int count = buffer.getInt();
+        for (int i = 0; i < count; i++) {
+            byte kind = buffer.get();
+            Route route = getRoute(buffer);
+            if (kind == AGGREGATED_ROUTE) {
+                int insideCount = buffer.getInt();
+                List<Route> routesInside = new ArrayList<>(insideCount);
+                for (int j = 0; j < insideCount; j++) {
+                    routesInside.add(getRoute(buffer));
+                }
+                route = new AggregatedRoute(route.nextHop, route.prefix, route.attributes, routesInside);
+            }
+            replay.restore(route);
+        }
+    }
+
+    /**
+     * Reads a journal segment, applying each record in it, up to the end marker or a record that was never finished.
+     */
+    private static void readSegment(Path path, Replay replay) throws IOException {
+        ByteBuffer buffer = map(path);
+        while (buffer.remaining() >= 4) {
+            int length = buffer.getInt();
+            if (length <= 0 || length > buffer.remaining()) {
+                break;
+            }
+            ByteBuffer record = buffer.slice();
+            record.limit(length);
+            buffer.position(buffer.position() + length);
+            if (record.get() == ANNOUNCE) {
+                replay.announce(getRoute(record));
+            } else {
+                String neighbor = Prefix.formatAddress(record.getInt());
+                int count = record.getInt();
+                List<Prefix> prefixes = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    prefixes.add(new Prefix(record.getInt(), record.get()));
+                }
+                replay.withdraw(neighbor, prefixes);
+            }
+        }
+    }
+
+    private static ByteBuffer map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /**
+     * Returns the number of bytes putRoute() writes for a route.
+     */
+    private static int routeSize(Route route) {
+        return 19 + route.attributes.ASPath.length * 4;
+    }
+
+    /**
+     * Writes a route's neighbor, prefix and attributes.
+     */
+    private static void putRoute(ByteBuffer buffer, Route route) {
+        Attributes attributes = route.attributes;
+        buffer.putInt(route.peer);
+        buffer.putInt(route.prefix.network);
+        buffer.put((byte) route.prefix.length);
+        buffer.putInt(attributes.localpref);
+        buffer.put((byte) (attributes.selfOrigin ? 1 : 0));
+        buffer.put((byte) attributes.origin.ordinal());
+        buffer.putInt(attributes.ASPath.length);
+        for (int asn : attributes.ASPath) {
+            buffer.putInt(asn);
+        }
+    }
+
+    /**
+     * Reads a route written by putRoute().
+     */
+    private static Route getRoute(ByteBuffer buffer) {
+        String nextHop = Prefix.formatAddress(buffer.getInt());
+        Prefix prefix = new Prefix(buffer.getInt(), buffer.get());
+        int localpref = buffer.getInt();
+        boolean selfOrigin = buffer.get() != 0;
+        UpdateMessage.UpdateParams.Origin origin = UpdateMessage.UpdateParams.Origin.values()[buffer.get()];
+        int[] path = new int[buffer.getInt()];
+        for (int i = 0; i < path.length; i++) {
+            path[i] = buffer.getInt();
+        }
+        return new Route(nextHop, prefix, Attributes.intern(localpref, selfOrigin, path, origin));
+    }
+
+    private Path file(String kind, int number) {
+        return directory.resolve(kind + number + ".bin");
+    }
+
+    /**
+     * Returns the numbers of the files of a kind in the directory.
+     */
+    private List<Integer> numbers(String kind) throws IOException {
+        List<Integer> numbers = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(path -> {
+                String name = path.getFileName().toString();
+                if (name.startsWith(kind) && name.endsWith(".bin")) {
+                    try {
+                        numbers.add(Integer.parseInt(name.substring(kind.length(), name.length() - 4)));
+                    } catch (NumberFormatException e) {
+                        //Not one of ours.
+                    }
+                }
+            });
+        }
+        Collections.sort(numbers);
+        return numbers;
+    }
+}
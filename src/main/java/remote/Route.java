@@ -2,69 +2,66 @@ package remote;
 
 import messages.UpdateMessage;
 
+import java.util.Comparator;
 import java.util.List;
 
-import static remote.Router.toBinary;
-
 /**
  * Represents a route in the BGP routing table.
  */
 public class Route {
-    public String network;
-    public String nextHop;
-    public int netmask;
-    public int localpref;
-    public boolean selfOrigin;
-    public List<Integer> ASPath;
-    public UpdateMessage.UpdateParams.Origin origin;
+    /**
+     * Orders routes for the same prefix by preference, most preferred first: highest localpref, then self-originated,
+     * then shortest ASPath, then best origin (IGP, EGP, UNK), then lowest peer address.
+     */
+    public static final Comparator<Route> DECISION_ORDER = Route::compareDecision;
+
+    public final Prefix prefix;
+    public final String nextHop;
+    //Interned attributes, shared with every route announced with the same attributes.
+    public final Attributes attributes;
+    //The next hop as an int, precomputed for the decision process.
+    public final int peer;
 
-    public Route(String nextHop, String network, int netmask, int localpref, boolean selfOrigin, List<Integer> ASPath, UpdateMessage.UpdateParams.Origin origin) {
+    public Route(String nextHop, Prefix prefix, Attributes attributes) {
         this.nextHop = nextHop;
-        this.network = network;
-        this.netmask = netmask;
-        this.localpref = localpref;
-        this.selfOrigin = selfOrigin;
-        this.ASPath = ASPath;
-        this.origin = origin;
+        this.prefix = prefix;
+        this.attributes = attributes;
+        this.peer = Prefix.parseAddress(nextHop);
+    }
+
+    public Route(String nextHop, Prefix prefix, int localpref, boolean selfOrigin, List<Integer> ASPath, UpdateMessage.UpdateParams.Origin origin) {
+        this(nextHop, prefix, Attributes.intern(localpref, selfOrigin, ASPath, origin));
     }
 
     public Route(UpdateMessage.UpdateParams params, String nextHop) {
-        this.nextHop = nextHop;
-        this.network = params.network;
-        if (params.netmask.equals("0.0.0.0")) {
-            this.netmask = 0;
-        } else {
-            this.netmask = toBinary(params.netmask).split("0")[0].length();
-        }
-        this.localpref = params.localpref;
-        this.selfOrigin = params.selfOrigin;
-        this.ASPath = params.ASPath;
-        this.origin = params.origin;
+        this(nextHop, Prefix.parse(params.network, params.netmask), params.localpref, params.selfOrigin, params.ASPath, params.origin);
     }
 
     /**
-     * Returns the netmask in the format of an IP address.
+     * Compares two routes for the same prefix by preference.
      *
-     * @return the netmask in the format of an IP address.
+     * @param route the first route.
+     * @param other the second route.
+     * @return a negative number if route is preferred, a positive number if other is preferred, or zero if neither is.
      */
-    public String getNetmask() {
-        StringBuilder ipBuilder = new StringBuilder();
-        for (int i = 0; i < 4; i++) {
-            StringBuilder binaryBuilder = new StringBuilder();
-
-            for (int j = 0; j < 8; j++) {
-                if ((i) * 8 + j + 1 <= netmask) {
-                    binaryBuilder.append("1");
-                } else {
-                    binaryBuilder.append("0");
-                }
+    public static int compareDecision(Route route, Route other) {
+        Attributes attributes = route.attributes;
+        Attributes otherAttributes = other.attributes;
+        if (attributes != otherAttributes) {
+            if (attributes.localpref != otherAttributes.localpref) {
+                return attributes.localpref > otherAttributes.localpref ? -1 : 1;
+            }
+            if (attributes.selfOrigin != otherAttributes.selfOrigin) {
+                return attributes.selfOrigin ? -1 : 1;
+            }
+            if (attributes.ASPath.length != otherAttributes.ASPath.length) {
+                return attributes.ASPath.length < otherAttributes.ASPath.length ? -1 : 1;
             }
-            ipBuilder.append(Integer.parseInt(binaryBuilder.toString(), 2));
-            if (i < 3) {
-                ipBuilder.append(".");
+            if (attributes.originRank != otherAttributes.originRank) {
+                return attributes.originRank < otherAttributes.originRank ? -1 : 1;
             }
         }
-        return ipBuilder.toString();
+        return Integer.compareUnsigned(route.peer, other.peer);
     }
 
     /**
@@ -74,16 +71,12 @@ public class Route {
      * @return true if the attributes of the two routes are equal.
      */
     public boolean attributesEqual(Route other) {
-        return nextHop.equals(other.nextHop)
-                && localpref == other.localpref
-                && selfOrigin == other.selfOrigin
-                && ASPath.equals(other.ASPath)
-                && origin == other.origin;
+        return peer == other.peer && attributes == other.attributes;
     }
 
     @Override
     public String toString() {
-        return network + "/" + netmask;
+        return prefix.toString();
     }
 
     @Override
@@ -95,8 +88,12 @@ public class Route {
             return false;
         }
         Route other = (Route) o;
-        return network.equals(other.network)
-                && netmask == other.netmask
+        return prefix.equals(other.prefix)
                 && attributesEqual(other);
     }
+
+    @Override
+    public int hashCode() {
+        return (prefix.hashCode() * 31 + peer) * 31 + attributes.hashCode();
+    }
 }
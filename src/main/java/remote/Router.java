@@ -1,34 +1,85 @@
 package remote;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import json.GsonTypeAdapters.MessageDeserializer;
-import json.GsonTypeAdapters.MessageSerializer;
+import com.google.gson.JsonParseException;
+import json.MessageCodec;
 import messages.*;
 
 import java.io.IOException;
-import java.math.BigInteger;
-import java.net.DatagramSocket;
-import java.net.InetAddress;
-import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
-import java.nio.channels.DatagramChannel;
-import java.nio.channels.SelectionKey;
-import java.nio.channels.Selector;
-import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
 import java.util.*;
-
-import static messages.UpdateMessage.UpdateParams.Origin.*;
-
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A BGP router. Each neighbor's channel is read by a data plane worker, which forwards data messages against the
+ * latest snapshot of the FIB. Control messages are passed on to a single RIB thread, which owns the Adj-RIB-Ins and
+ * FIB, and publishes a new FIB snapshot after each batch of messages that changes it.
+ */
 public class Router {
-    static Map<String, String> relations = new HashMap<>();
-    static Map<String, DatagramSocket> sockets = new HashMap<>();
-    static Map<String, Integer> ports = new HashMap<>();
-    List<Route> routingTable = new ArrayList<>();
-    //Map of routes that have been aggregated, to the route they have been aggregated to.
-    Map<Route, AggregatedRoute> routesAggregated = new HashMap<>();
     private final int asn;
-    private final Gson gson;
+    private final RouterConfig config;
+    //Neighbors by address, and by id.
+    private final Map<String, Neighbor> neighbors;
+    private final Neighbor[] neighborsById;
+    //Policies routes learned from and sent to each neighbor must pass, by neighbor id.
+    private final Policy[] importPolicies;
+    private final Policy[] exportPolicies;
+
+    //State owned by the RIB thread.
+    //Map of each neighbor to the routes it has announced.
+    Map<String, AdjRibIn> adjRibIns = new LinkedHashMap<>();
+    //The best route for each prefix in the routing table, indexed for longest prefix match.
+    PrefixTrie<Route> fib = new PrefixTrie<>();
+    //Whether the FIB changed since its last snapshot was published.
+    private boolean fibChanged;
+    //Messages the RIB thread sends.
+    private final Outbox ribOutbox;
+    //Whether a data message may be forwarded between two neighbors, by source id * neighbor count + next hop id. It
+    //is only carried when one of them is a customer.
+    private final boolean[] forwardVerdicts;
+    //Addresses of the neighbors as ints in ascending order, and the id of the neighbor with each, so next hops are
+    //found without hashing their addresses.
+    private final int[] neighborAddresses;
+    private final int[] neighborIdsByAddress;
+    //Journal of the changes made to the RIB, or null if the RIB isn't persisted.
+    private final RibJournal journal;
+    //Next hops of the destinations of data messages the RIB thread forwards, and buffers it encodes them in.
+    private final DestinationCache ribDestinationCache;
+    private final BufferPool ribBufferPool = new BufferPool(1);
+    //Table dumps still being streamed, which send a chunk per pass of the RIB thread, and the buffer chunks are
+    //encoded in.
+    private final List<TableDump> tableDumps = new ArrayList<>();
+    private final ByteBuffer dumpBuffer = ByteBuffer.allocate(MessageCodec.MAX_DATAGRAM);
+    //Announcements and withdrawals waiting for the coalescing window to close, by neighbor id. Null if disabled.
+    private final AdjRibOut[] adjRibOuts;
+    //Penalties of flapping routes, or null if routes aren't damped.
+    private final FlapDamping damping;
+    //Time each neighbor's stale routes are swept, as System.nanoTime(), by neighbor id. 0 if it has none.
+    private final long[] staleDeadlines;
+    //Time the current coalescing window closes, as System.nanoTime(), or 0 if no window is open.
+    private long windowDeadline;
+
+    //Snapshot of the FIB that data plane workers forward against. Never modified once published.
+    private volatile PrefixTrie<Route> fibSnapshot = fib.snapshot();
+    //Control messages received by the data plane workers, waiting to be handled by the RIB thread.
+    private final BlockingQueue<ByteBuffer> controlMessages = new LinkedBlockingQueue<>();
+    //Control messages the RIB thread has handled, and published the resulting FIB snapshot of.
+    private volatile long controlMessagesHandled;
+
+    //Number of control messages handled per RIB batch, and sent per neighbor flush by the RIB thread.
+    public final BatchMetrics controlBatches = new BatchMetrics("rib receive");
+    public final BatchMetrics ribSendBatches = new BatchMetrics("rib send");
+    private final List<DataPlaneWorker> workers = new ArrayList<>();
+    //Counters and latencies of all threads, served on the stats port.
+    public final RouterMetrics metrics;
+    //Serves the metrics, or null if no stats port was given.
+    private StatsServer statsServer;
+    //Threads the router runs on, including the one that called run().
+    private final List<Thread> threads = new ArrayList<>();
+    //Whether the router has been stopped, after which its threads end quietly.
+    private volatile boolean stopped;
 
     /**
      * Create a new router
@@ -37,147 +88,475 @@ public class Router {
      * @param connections List of connections in the form of "port-neighbor-relation"
      */
     public Router(int asn, String[] connections) throws Exception {
-        System.out.println("Router at AS " + asn + " starting up");
+        this(new RouterConfig(asn, connections));
+    }
 
-        gson = initGson();
-        this.asn = asn;
+    /**
+     * Create a new router
+     *
+     * @param config Configuration of the router, including its AS number and connections.
+     */
+    public Router(RouterConfig config) throws Exception {
+        System.out.println("Router at AS " + config.asn + " starting up");
 
-        for (String relationship : connections) {
+        this.asn = config.asn;
+        this.config = config;
+
+        this.metrics = new RouterMetrics(config.connections.length, config.statsPort > 0 || config.printMetrics);
+        Map<String, Neighbor> neighbors = new LinkedHashMap<>();
+        for (String relationship : config.connections) {
             String[] parts = relationship.split("-");
             String port = parts[0];
             String neighbor = parts[1];
             String relation = parts[2];
 
-            DatagramSocket socket = createSocket();
+            neighbors.put(neighbor, new Neighbor(neighbors.size(), neighbor, Relation.parse(relation), Integer.parseInt(port)));
+            adjRibIns.put(neighbor, new AdjRibIn(neighbor, metrics));
+        }
+        this.neighbors = Collections.unmodifiableMap(neighbors);
+        this.neighborsById = neighbors.values().toArray(new Neighbor[0]);
+
+        PolicyConfig policies = config.policyFile == null ? new PolicyConfig() : PolicyConfig.load(Paths.get(config.policyFile));
+        this.importPolicies = new Policy[neighborsById.length];
+        this.exportPolicies = new Policy[neighborsById.length];
+        for (Neighbor neighbor : neighborsById) {
+            importPolicies[neighbor.id] = policies.importPolicy(neighbor);
+            exportPolicies[neighbor.id] = policies.exportPolicy(neighbor);
+        }
+        this.staleDeadlines = new long[neighborsById.length];
+        this.damping = config.damping ? new FlapDamping(neighborsById.length, config.dampingHalfLifeMillis,
+                config.dampingSuppress, config.dampingReuse, metrics) : null;
+        this.forwardVerdicts = new boolean[neighborsById.length * neighborsById.length];
+        for (Neighbor src : neighborsById) {
+            for (Neighbor dst : neighborsById) {
+                forwardVerdicts[src.id * neighborsById.length + dst.id] = src.isCustomer() || dst.isCustomer();
+            }
+        }
+        this.neighborAddresses = new int[neighborsById.length];
+        this.neighborIdsByAddress = new int[neighborsById.length];
+        Neighbor[] byAddress = neighborsById.clone();
+        Arrays.sort(byAddress, Comparator.comparingInt(neighbor -> Prefix.parseAddress(neighbor.address)));
+        for (int i = 0; i < byAddress.length; i++) {
+            neighborAddresses[i] = Prefix.parseAddress(byAddress[i].address);
+            neighborIdsByAddress[i] = byAddress[i].id;
+        }
+        this.ribOutbox = new Outbox(neighborsById, ribSendBatches, metrics);
+        this.ribDestinationCache = new DestinationCache(config.destCacheSize, metrics);
+        if (config.mraiMillis > 0) {
+            this.adjRibOuts = new AdjRibOut[neighborsById.length];
+            for (Neighbor neighbor : neighborsById) {
+                adjRibOuts[neighbor.id] = new AdjRibOut(neighbor);
+            }
+        } else {
+            this.adjRibOuts = null;
+        }
 
-            sockets.put(neighbor, socket);
-            ports.put(neighbor, Integer.parseInt(port));
-            relations.put(neighbor, relation);
+        //Restore the RIB saved before a restart, so data can be forwarded before neighbors announce their routes again.
+        if (config.stateDir != null) {
+            this.journal = new RibJournal(Paths.get(config.stateDir), config.snapshotRecords, new JournalReplay());
+            fibSnapshot = fib.snapshot();
+            fibChanged = false;
+            //Neighbors may have withdrawn restored routes while the router was down, so like the routes of a restarted
+            //neighbor they are stale until announced again, and swept once restart-ms runs out. With restart-ms 0 there
+            //is no time to announce them again, so they are kept as they are, as the routes of a restarted neighbor are.
+            if (config.restartMillis > 0) {
+                long restoredDeadline = (System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(config.restartMillis)) | 1;
+                for (Neighbor neighbor : neighborsById) {
+                    if (getAdjRibIn(neighbor.address).markStale() > 0) {
+                        staleDeadlines[neighbor.id] = restoredDeadline;
+                    }
+                }
+            }
+        } else {
+            this.journal = null;
+        }
 
-            //Send Handshake Message
-            String message = gson.toJson(new HandshakeMessage(ourAddr(neighbor), neighbor));
-            send(neighbor, message);
+        //Send Handshake Messages
+        for (Neighbor neighbor : neighborsById) {
+            send(neighbor.address, new HandshakeMessage(neighbor.ourAddress, neighbor.address));
         }
+        ribOutbox.flush();
     }
 
     /**
-     * Initialize the Gson object by registering serializers and deserializers.
+     * Return the address of this router based on the address of a neighbor.
      *
-     * @return Gson object.
+     * @param dst Address of the neighbor.
+     * @return Address of this router.
      */
-    private Gson initGson() {
-        GsonBuilder builder = new GsonBuilder();
-
-        builder.registerTypeAdapter(Message.class, new MessageDeserializer());
-
-        builder.registerTypeAdapter(HandshakeMessage.class, new MessageSerializer());
-        builder.registerTypeAdapter(NoRouteMessage.class, new MessageSerializer());
-        builder.registerTypeAdapter(TableMessage.class, new MessageSerializer());
-
-        return builder.create();
+    public static String ourAddr(String dst) {
+        String[] quads = dst.split("\\.");
+        quads[3] = "1";
+        return String.join(".", quads);
     }
 
     /**
-     * Create a socket and bind it to an address and ephemeral port.
+     * Returns the neighbors of this router.
      *
-     * @return DatagramSocket
-     * @throws IOException If the socket could not be created.
+     * @return The neighbors, indexed by id.
      */
-    private DatagramSocket createSocket() throws IOException {
-        DatagramChannel channel = DatagramChannel.open();
-        DatagramSocket socket = channel.socket();
-        socket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
-
-        return socket;
+    public Neighbor[] getNeighbors() {
+        return neighborsById;
     }
 
     /**
-     * Return the address of this router based on the address of a neighbor.
+     * Returns the configuration of this router.
      *
-     * @param dst Address of the neighbor.
-     * @return Address of this router.
+     * @return The configuration.
      */
-    public String ourAddr(String dst) {
-        String[] quads = dst.split("\\.");
-        quads[3] = "1";
-        return String.join(".", quads);
+    public RouterConfig getConfig() {
+        return config;
     }
 
     /**
-     * Send a message to a network.
+     * Queue a message to be sent by the RIB thread to a network when it finishes its current batch.
      *
      * @param network Network to send the message to.
      * @param message Message to send.
-     * @throws Exception If the message could not be sent.
+     * @throws Exception If the message could not be encoded.
+     */
+    public void send(String network, Message message) throws Exception {
+        ribOutbox.send(neighbors.get(network), message);
+    }
+
+    /**
+     * Hands a control message received by a data plane worker to the RIB thread.
+     *
+     * @param msg Buffer containing the message, which must not be reused by the caller.
      */
-    public void send(String network, String message) throws Exception {
-        byte[] buffer = message.getBytes(StandardCharsets.UTF_8);
-        ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
-        InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), ports.get(network));
-        sockets.get(network).getChannel().send(byteBuffer, address);
+    public void submitControlMessage(ByteBuffer msg) {
+        controlMessages.add(msg);
     }
 
     /**
-     * Initiates loop that listens for incoming messages and handles them.
+     * Starts the RIB thread and any extra data plane workers, then runs the first data plane worker on this thread.
+     * If any thread fails, the router exits.
      *
      * @throws Exception If the router could not be started.
      */
     public void run() throws Exception {
-        try (Selector selector = initializeSelector()) {
-            while (true) {
-                selectReadyChannels(selector);
+        int workerCount = Math.min(config.dataWorkers, neighborsById.length);
+        List<List<Neighbor>> assignments = new ArrayList<>();
+        for (int i = 0; i < workerCount; i++) {
+            assignments.add(new ArrayList<>());
+        }
+        for (Neighbor neighbor : neighborsById) {
+            assignments.get(neighbor.id % workerCount).add(neighbor);
+        }
+        for (int i = 0; i < workerCount; i++) {
+            workers.add(new DataPlaneWorker(this, "data-" + i, assignments.get(i)));
+        }
+
+        synchronized (threads) {
+            if (stopped) {
+                return;
+            }
+            threads.add(Thread.currentThread());
+            if (config.statsPort > 0) {
+                statsServer = new StatsServer(this, config.statsPort);
+                startThread("stats", statsServer::run);
+            }
+            startThread("rib", this::runControlPlane);
+            if (journal != null) {
+                startThread("journal", journal::run);
+            }
+            for (int i = 1; i < workerCount; i++) {
+                startThread("data-" + i, workers.get(i)::run);
+            }
+        }
+        try {
+            workers.get(0).run();
+        } catch (Exception e) {
+            if (!stopped) {
+                throw e;
             }
         }
     }
 
     /**
-     * Initialize the selector by registering all sockets to it in read mode and setting them to non-blocking.
+     * Stops the router, interrupting its threads and closing its channels. Used when the router runs inside another
+     * program, such as the load generator, rather than until it is killed.
      *
-     * @return Selector
-     * @throws IOException If the selector could not be initialized.
+     * @throws IOException If a channel could not be closed.
      */
-    private Selector initializeSelector() throws IOException {
-        Selector selector = Selector.open();
-        for (String neighbor : sockets.keySet()) {
-            DatagramSocket socket = sockets.get(neighbor);
-            socket.getChannel().configureBlocking(false);
-            socket.getChannel().register(selector, SelectionKey.OP_READ, neighbor);
+    public void stop() throws IOException {
+        synchronized (threads) {
+            stopped = true;
+            for (Thread thread : threads) {
+                thread.interrupt();
+            }
+        }
+        for (Neighbor neighbor : neighborsById) {
+            neighbor.channel.close();
+        }
+        if (statsServer != null) {
+            statsServer.close();
         }
-        return selector;
     }
 
     /**
-     * Selects all ready channels, and iterates through them, then handles received messages.
+     * Formats the router's metrics as JSON, as served on the stats port.
      *
-     * @param selector Selector to select from.
-     * @throws Exception If a channel could not be handled.
+     * @return The metrics.
      */
-    private void selectReadyChannels(Selector selector) throws Exception {
-        int readyChannels = selector.select();
-        if (readyChannels == 0) {
-            return;
-        }
-        Set<SelectionKey> keys = selector.selectedKeys();
-        Iterator<SelectionKey> keyIterator = keys.iterator();
+    public String getMetricsJson() {
+        return metrics.toJson(neighborsById, fibSnapshot.size());
+    }
+
+    /**
+     * Returns the number of control messages the RIB thread has handled. Data messages are forwarded against a FIB
+     * snapshot that reflects all of them.
+     *
+     * @return The number of control messages handled.
+     */
+    public long getControlMessagesHandled() {
+        return controlMessagesHandled;
+    }
+
+    /**
+     * A task run by one of the router's threads.
+     */
+    private interface Task {
+        void run() throws Exception;
+    }
+
+    /**
+     * Starts a thread running a task. If the task fails, the whole router exits, as it would with a single thread.
+     *
+     * @param name Name of the thread.
+     * @param task Task to run.
+     */
+    private void startThread(String name, Task task) {
+        Thread thread = new Thread(() -> {
+            try {
+                task.run();
+            } catch (Throwable e) {
+                if (stopped) {
+                    return;
+                }
+                e.printStackTrace();
+                System.exit(1);
+            }
+        }, name);
+        threads.add(thread);
+        thread.start();
+    }
 
-        while (keyIterator.hasNext()) {
-            SelectionKey key = keyIterator.next();
-            if (key.isReadable()) {
-                String msg = readMessage(key);
+    /**
+     * Handles control messages on the RIB thread until it is interrupted. Messages are taken in batches of up to the
+     * receive budget; after each batch, a new FIB snapshot is published if the FIB changed, and then the messages the
+     * batch caused are sent, or held in the Adj-RIB-Outs until the coalescing window closes.
+     *
+     * @throws Exception If a message could not be handled.
+     */
+    private void runControlPlane() throws Exception {
+        List<ByteBuffer> batch = new ArrayList<>();
+        while (!Thread.currentThread().isInterrupted()) {
+            //While datagrams are still waiting for room to be sent, wake up regularly to retry them.
+            long timeout = ribOutbox.hasPending() ? TimeUnit.MILLISECONDS.toNanos(1) : Long.MAX_VALUE;
+            if (!tableDumps.isEmpty() && !ribOutbox.hasPending()) {
+                //Don't wait for messages while a dump has chunks ready to go out.
+                timeout = 0;
+            }
+            if (windowDeadline != 0) {
+                timeout = Math.min(timeout, windowDeadline - System.nanoTime());
+            }
+            if (damping != null && damping.nextExpiryMillis() != Long.MAX_VALUE) {
+                timeout = Math.min(timeout, TimeUnit.MILLISECONDS.toNanos(damping.nextExpiryMillis() - nowMillis()));
+            }
+            for (long staleDeadline : staleDeadlines) {
+                if (staleDeadline != 0) {
+                    timeout = Math.min(timeout, staleDeadline - System.nanoTime());
+                }
+            }
+            ByteBuffer first = timeout == Long.MAX_VALUE
+                    ? controlMessages.take()
+                    : controlMessages.poll(timeout, TimeUnit.NANOSECONDS);
+            if (first != null) {
+                batch.add(first);
+                controlMessages.drainTo(batch, config.receiveBudget - 1);
+            }
+
+            for (ByteBuffer msg : batch) {
                 handleMessage(msg);
             }
-            keyIterator.remove();
+            controlBatches.record(batch.size());
+            if (damping != null) {
+                reuseDampedRoutes();
+            }
+            for (Neighbor neighbor : neighborsById) {
+                if (staleDeadlines[neighbor.id] != 0 && System.nanoTime() - staleDeadlines[neighbor.id] >= 0) {
+                    sweepStale(neighbor);
+                }
+            }
+
+            if (fibChanged) {
+                fibSnapshot = fib.snapshot();
+                fibChanged = false;
+            }
+            if (journal != null) {
+                journal.commit();
+                if (journal.isSnapshotDue()) {
+                    journal.snapshot(copyRoutingTable());
+                }
+            }
+            controlMessagesHandled += batch.size();
+            batch.clear();
+            if (windowDeadline != 0 && System.nanoTime() - windowDeadline >= 0) {
+                closeWindow();
+            }
+            sendDumpChunks();
+            ribOutbox.flush();
+        }
+    }
+
+    /**
+     * Queues the next chunk of every table dump still being streamed. A dump waits while its earlier chunks haven't
+     * been sent yet, so a slow neighbor doesn't pile up the whole table in the outbox.
+     *
+     * @throws IOException If a chunk could not be encoded.
+     */
+    private void sendDumpChunks() throws IOException {
+        for (Iterator<TableDump> it = tableDumps.iterator(); it.hasNext(); ) {
+            TableDump dump = it.next();
+            if (!ribOutbox.hasPending(dump.neighbor) && dump.sendChunk(ribOutbox, dumpBuffer)) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Copies the routes in the routing table, including the announced routes each aggregated route holds, so they can
+     * be saved while the table goes on changing.
+     *
+     * @return The routes of every neighbor.
+     */
+    private List<Route> copyRoutingTable() {
+        List<Route> routes = new ArrayList<>();
+        for (AdjRibIn adjRibIn : adjRibIns.values()) {
+            for (Route route : adjRibIn.getRoutes()) {
+                if (route instanceof AggregatedRoute) {
+                    route = new AggregatedRoute(route.nextHop, route.prefix, route.attributes,
+                            new ArrayList<>(((AggregatedRoute) route).getRoutesInside()));
+                }
+                routes.add(route);
+            }
+        }
+        return routes;
+    }
+
+    /**
+     * Applies the routes read back from the journal to the RIB, leaving out those of neighbors no longer connected.
+     * Nothing is sent to neighbors, as they were told when the routes were first applied.
+     */
+    private class JournalReplay implements RibJournal.Replay {
+        @Override
+        public void restore(Route route) {
+            if (neighbors.containsKey(route.nextHop)) {
+                Set<Prefix> changedPrefixes = new HashSet<>();
+                getAdjRibIn(route.nextHop).restore(route, changedPrefixes);
+                updateBestRoutes(changedPrefixes);
+            }
+        }
+
+        @Override
+        public void announce(Route route) {
+            if (neighbors.containsKey(route.nextHop)) {
+                Set<Prefix> changedPrefixes = new HashSet<>();
+                getAdjRibIn(route.nextHop).announce(route, changedPrefixes);
+                updateBestRoutes(changedPrefixes);
+            }
+        }
+
+        @Override
+        public void withdraw(String neighbor, List<Prefix> prefixes) {
+            if (neighbors.containsKey(neighbor)) {
+                Set<Prefix> changedPrefixes = new HashSet<>();
+                getAdjRibIn(neighbor).withdraw(prefixes, changedPrefixes);
+                updateBestRoutes(changedPrefixes);
+            }
+        }
+    }
+
+    /**
+     * Opens a coalescing window if none is open, so messages queued in the Adj-RIB-Outs are sent when it closes.
+     */
+    private void openWindow() {
+        if (windowDeadline == 0) {
+            //A deadline of exactly 0 would read as no window being open.
+            windowDeadline = (System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(config.mraiMillis)) | 1;
+        }
+    }
+
+    /**
+     * Closes the coalescing window, queueing what is left in every Adj-RIB-Out to be sent.
+     *
+     * @throws Exception If a message could not be encoded.
+     */
+    private void closeWindow() throws Exception {
+        for (AdjRibOut adjRibOut : adjRibOuts) {
+            adjRibOut.flush(ribOutbox);
+        }
+        windowDeadline = 0;
+    }
+
+    /**
+     * Returns the number of messages to neighbors saved by coalescing them in the Adj-RIB-Outs.
+     *
+     * @return The number of messages saved, or 0 if coalescing is disabled.
+     */
+    public long getMessagesSaved() {
+        long saved = 0;
+        if (adjRibOuts != null) {
+            for (AdjRibOut adjRibOut : adjRibOuts) {
+                saved += adjRibOut.getMessagesSaved();
+            }
         }
+        return saved;
+    }
+
+    /**
+     * Returns the version of the FIB snapshot data messages are currently forwarded against, which counts the
+     * changes made to the FIB before it was published.
+     *
+     * @return The version of the latest FIB snapshot.
+     */
+    public long getFibVersion() {
+        return fibSnapshot.version();
+    }
+
+    /**
+     * Returns all metrics recorded by the router's threads.
+     *
+     * @return The metrics.
+     */
+    public List<BatchMetrics> getMetrics() {
+        List<BatchMetrics> metrics = new ArrayList<>(List.of(controlBatches, ribSendBatches));
+        for (DataPlaneWorker worker : workers) {
+            metrics.add(worker.receiveBatches);
+            metrics.add(worker.sendBatches);
+        }
+        return metrics;
     }
 
     /**
      * Handles a message based on its type.
      *
-     * @param msg Message to handle.
+     * @param msg Buffer containing the message to handle. A message that can't be decoded is logged and dropped.
      * @throws Exception If the message could not be handled.
      */
-    public void handleMessage(String msg) throws Exception {
-        Message message = gson.fromJson(msg, Message.class);
+    public void handleMessage(ByteBuffer msg) throws Exception {
+        long start = metrics.timed ? System.nanoTime() : 0;
+        Message message;
+        try {
+            message = MessageCodec.decode(msg);
+        } catch (IOException | JsonParseException e) {
+            System.out.println("Dropping malformed message: " + e.getMessage());
+            return;
+        }
+        if (metrics.timed) {
+            metrics.parseLatency.record(System.nanoTime() - start);
+        }
         switch (message.getType()) {
             case update:
                 handleUpdate((UpdateMessage) message);
@@ -191,278 +570,281 @@ public class Router {
             case withdraw:
                 handleWithdraw((WithdrawMessage) message);
                 break;
+            case handshake:
+                handleHandshake((HandshakeMessage) message);
+                break;
+            case eor:
+                handleEndOfRib((EndOfRibMessage) message);
+                break;
             default:
                 System.out.println("Unknown message type");
         }
     }
 
     /**
-     * Handles an update message by updating the routing table and forwarding the message to neighbors.
+     * Handles an update message by updating the routing table and forwarding the message to neighbors, if the
+     * neighbor's import policy permits it. A denied update still replaces the neighbor's previous route for the
+     * prefix, which is withdrawn.
      *
      * @param message Message to handle.
      * @throws Exception If the message could not be handled.
      */
     public void handleUpdate(UpdateMessage message) throws Exception {
-        if (message.dst.equals(ourAddr(message.src))) {
-            updateRoutingTable(message);
-            updateAppropriate(message);
+        Neighbor source = neighbors.get(message.src);
+        if (source == null || !message.dst.equals(source.ourAddress)) {
+            return;
         }
-    }
 
-    /**
-     * Forwards a message to the appropriate neighbors depending on where the message came from and the
-     * relationship of the neighbor.
-     *
-     * @param message message to send to neighbors.
-     */
-    private void updateAppropriate(Message message) throws Exception {
-        if (relations.get(message.src).equals("cust")) {
-            broadcastAnnouncement(message);
-        } else {
-            announceToCustomers(message);
+        UpdateMessage.UpdateParams params = message.getUpdateParams();
+        Route route = new Route(params, message.src);
+        Prefix prefix = route.prefix;
+        AdjRibIn adjRibIn = getAdjRibIn(message.src);
+        if (adjRibIn.refresh(route)) {
+            //A restarted neighbor announced the route it had before, which changes nothing downstream.
+            metrics.staleRefreshed.increment();
+            return;
+        }
+        boolean isAnnounced = adjRibIn.isAnnounced(prefix);
+        int prefixCount = adjRibIn.announcedCount() + (isAnnounced ? 0 : 1);
+        boolean permitted = importPolicies[source.id].permits(prefix.network, prefix.length, route.attributes.ASPath, source.relation, prefixCount);
+        if (permitted && (damping == null || !damping.announce(source.id, route, params, adjRibIn.getAnnounced(prefix), nowMillis()))) {
+            updateRoutingTable(route);
+            exportUpdate(source, params, route);
+        } else if (isAnnounced) {
+            //A suppressed update is held back by the damping, and like a denied one it replaces the previous route.
+            WithdrawMessage.WithdrawNetwork[] networks = {new WithdrawMessage.WithdrawNetwork(params.network, params.netmask)};
+            withdraw(source, new WithdrawMessage(message.src, message.dst, networks), List.of(prefix));
         }
     }
 
     /**
-     * Updates the routing table based on an update message.
+     * Announces the routes held back by the damping whose penalty has decayed enough for them to be used again.
      *
-     * @param message Message to update the routing table with.
+     * @throws Exception If an update could not be sent.
      */
-    public void updateRoutingTable(UpdateMessage message) {
-        UpdateMessage.UpdateParams params = message.getUpdateParams();
-        Route newRoute = new Route(params, message.src);
-
-        if (!checkAggregate(newRoute)) {
-            routingTable.add(newRoute);
+    private void reuseDampedRoutes() throws Exception {
+        List<FlapDamping.Record> reused = new ArrayList<>();
+        damping.expire(nowMillis(), reused);
+        for (FlapDamping.Record record : reused) {
+            updateRoutingTable(record.pendingRoute);
+            exportUpdate(neighborsById[record.neighborId], record.pendingParams, record.pendingRoute);
+            record.pendingRoute = null;
+            record.pendingParams = null;
         }
     }
 
     /**
-     * Checks if a route can be aggregated with an existing route and does so if possible.
+     * Returns the time on a monotonic clock, as used for the damping.
      *
-     * @param newRoute route to aggregate into the routing table.
-     * @return true if route was aggregated, false if not.
+     * @return The time in milliseconds.
      */
-    private boolean checkAggregate(Route newRoute) {
-        for (Route route : routingTable) {
-            if (routesCanBeAggregated(newRoute, route)) {
-                aggregate(newRoute, route);
-                return true;
-            }
-        }
-
-        return false;
+    private static long nowMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
     }
 
     /**
-     * Returns whether a route can be aggregated with an existing route in the table.
+     * Handles a handshake from a neighbor that restarted, marking the routes it announced before as stale. They are
+     * kept, and data is still forwarded along them, while the neighbor announces its routes again; re-announcements
+     * of the same routes are absorbed, and the routes still stale are withdrawn once the neighbor sends an end-of-RIB
+     * message or the restart time runs out.
      *
-     * @param newRoute      route being added.
-     * @param existingRoute route already in table.
-     * @return true if routes can be aggregated, false if not.
+     * @param message The handshake message.
      */
-    private boolean routesCanBeAggregated(Route newRoute, Route existingRoute) {
-        if (newRoute.attributesEqual(existingRoute)) {
-            //Get the low and high range of the new route.
-            String[] newRouteRange = getIPRange(newRoute).split("-");
-            BigInteger lowRange = toBigInt(newRouteRange[0]);
-            BigInteger highRange = toBigInt(newRouteRange[1]);
-
-            //Get the low and high range of the existing route.
-            String[] routeRange = getIPRange(existingRoute).split("-");
-            BigInteger existingRouteLow = toBigInt(routeRange[0]);
-            BigInteger existingRouteHigh = toBigInt(routeRange[1]);
-
-            boolean adjacent = existingRouteLow.equals(highRange.add(BigInteger.ONE))
-                    || existingRouteHigh.equals(lowRange.subtract(BigInteger.ONE));
-            boolean existingContainsNew = existingRouteLow.compareTo(lowRange) <= 0 && existingRouteHigh.compareTo(highRange) >= 0;
-            boolean newContainsExisting = lowRange.compareTo(existingRouteLow) <= 0 && highRange.compareTo(existingRouteHigh) >= 0;
-
-            return adjacent || existingContainsNew || newContainsExisting;
+    private void handleHandshake(HandshakeMessage message) {
+        Neighbor source = neighbors.get(message.src);
+        if (source == null || config.restartMillis == 0) {
+            return;
+        }
+        if (getAdjRibIn(source.address).markStale() > 0) {
+            //A deadline of exactly 0 would read as no routes being stale.
+            staleDeadlines[source.id] = (System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(config.restartMillis)) | 1;
         }
-        return false;
     }
 
     /**
-     * Aggregates two routes.
+     * Handles an end-of-RIB message, withdrawing the routes the neighbor didn't announce again since it restarted.
      *
-     * @param newRoute      route being added.
-     * @param existingRoute route originally in table.
+     * @param message The end-of-RIB message.
+     * @throws Exception If the withdrawal could not be sent.
      */
-    private void aggregate(Route newRoute, Route existingRoute) {
-        AggregatedRoute aggregatedRoute = getAggregatedRoute(newRoute, existingRoute);
-
-        routingTable.remove(existingRoute);
-        routingTable.add(aggregatedRoute);
+    private void handleEndOfRib(EndOfRibMessage message) throws Exception {
+        Neighbor source = neighbors.get(message.src);
+        if (source != null) {
+            sweepStale(source);
+        }
     }
 
     /**
-     * Gets a Route representation of the aggregation between two routes.
+     * Withdraws all of a neighbor's stale routes at once, forwarding them to the other neighbors as one withdrawal,
+     * split into messages that fit in a datagram.
      *
-     * @param newRoute      route being added to table.
-     * @param existingRoute route already in table.
-     * @return an AggregatedRoute, containing a list of all routes that have been aggregated to make it.
+     * @param source The neighbor.
+     * @throws Exception If the withdrawal could not be sent.
      */
-    private AggregatedRoute getAggregatedRoute(Route newRoute, Route existingRoute) {
-        String newPrefix = toBinary(newRoute.network);
-        String existingPrefix = toBinary(existingRoute.network);
-
-        int aggregatedNetmask = 0;
-
-        for (int i = 0; i < newPrefix.length(); i++) {
-            if (newPrefix.charAt(i) != existingPrefix.charAt(i)) {
-                aggregatedNetmask = i;
-                break;
-            }
-        }
-
-        String netmaskBinary = "1".repeat(aggregatedNetmask) + "0".repeat(32 - aggregatedNetmask);
-
-        String aggregatedNetwork = toIP(binaryAnd(newPrefix, netmaskBinary));
-
-        List<Route> routesInside = new ArrayList<>();
-        routesInside.add(newRoute);
-        if (existingRoute instanceof AggregatedRoute) {
-            routesInside.addAll(((AggregatedRoute) existingRoute).getRoutesInside());
-        } else {
-            routesInside.add(existingRoute);
+    private void sweepStale(Neighbor source) throws Exception {
+        staleDeadlines[source.id] = 0;
+        List<Prefix> prefixes = getAdjRibIn(source.address).takeStale();
+        if (prefixes.isEmpty()) {
+            return;
         }
-
-        AggregatedRoute aggregatedRoute = new AggregatedRoute(newRoute.nextHop, aggregatedNetwork, aggregatedNetmask, newRoute.localpref, newRoute.selfOrigin, newRoute.ASPath, newRoute.origin,
-                routesInside);
-
-        //If the two routes are already aggregated, add the new route to the existing AggregatedRoute.
-        if (existingRoute.equals(aggregatedRoute)) {
-            assert existingRoute instanceof AggregatedRoute;
-            AggregatedRoute existingAggregatedRoute = (AggregatedRoute) existingRoute;
-            existingAggregatedRoute.includeRoute(newRoute);
-            routesAggregated.put(newRoute, existingAggregatedRoute);
-        } else {
-            routesAggregated.put(newRoute, aggregatedRoute);
-            routesAggregated.put(existingRoute, aggregatedRoute);
+        WithdrawMessage.WithdrawNetwork[] networks = new WithdrawMessage.WithdrawNetwork[prefixes.size()];
+        for (int i = 0; i < networks.length; i++) {
+            networks[i] = new WithdrawMessage.WithdrawNetwork(prefixes.get(i).networkString(), prefixes.get(i).netmaskString());
         }
-
-        return aggregatedRoute;
+        metrics.staleSwept.add(prefixes.size());
+        withdraw(source, new WithdrawMessage(source.address, source.ourAddress, networks), prefixes);
     }
 
     /**
-     * Performs a binary AND operation on two binary strings.
+     * Forwards an update to the neighbors whose export policy permits it.
      *
-     * @param binary1 The first binary string.
-     * @param binary2 The second binary string.
-     * @return The result of the binary AND operation.
+     * @param source Neighbor the update came from.
+     * @param params Parameters of the update.
+     * @param route  Route the update announces.
+     * @throws Exception If the message could not be sent.
      */
-    private String binaryAnd(String binary1, String binary2) {
-        StringBuilder result = new StringBuilder();
-        for (int i = 0; i < binary1.length(); i++) {
-            if (binary1.charAt(i) == '1' && binary2.charAt(i) == '1') {
-                result.append("1");
-            } else {
-                result.append("0");
+    private void exportUpdate(Neighbor source, UpdateMessage.UpdateParams params, Route route) throws Exception {
+        Prefix prefix = route.prefix;
+        for (Neighbor neighbor : neighborsById) {
+            if (neighbor != source && exportPolicies[neighbor.id].permits(prefix.network, prefix.length, route.attributes.ASPath, source.relation, 0)) {
+                forwardUpdate(neighbor, params, route);
             }
         }
-        return result.toString();
     }
 
     /**
-     * Gets the IP subnet range of a route.
+     * Forwards a withdraw message to every neighbor, leaving out the networks each neighbor's export policy denies.
+     * AS path rules don't apply, as a withdrawal has no AS path.
      *
-     * @param route route to get range of.
-     * @return a string containing the two edges of the range split by a hyphen.
+     * @param source   Neighbor the withdrawal came from.
+     * @param message  Withdraw message to forward.
+     * @param prefixes Prefixes of the withdrawn networks, in the same order.
+     * @throws Exception If the message could not be sent.
      */
-    private String getIPRange(Route route) {
-        if (route.netmask == 0) {
-            return "0.0.0.0-0.0.0.0";
-        } else {
-            int[] bitBoundaries = new int[]{24, 16, 8};
-            int mask;
-            int bitPrefix = 8;
-            int fixedOctet = 0;
-            if (route.netmask >= 8) {
-                mask = route.netmask;
-                for (int i = 0; i < bitBoundaries.length; i++) {
-                    if (mask >= bitBoundaries[i]) {
-                        bitPrefix = bitBoundaries[i];
-                        fixedOctet = 3 - i;
-                        break;
-                    }
-                }
-            } else {
-                mask = 8 + route.netmask;
+    private void exportWithdraw(Neighbor source, WithdrawMessage message, List<Prefix> prefixes) throws Exception {
+        WithdrawMessage.WithdrawNetwork[] networks = message.getWithdrawNetworks();
+        for (Neighbor neighbor : neighborsById) {
+            if (neighbor == source) {
+                continue;
             }
-
-            int startingOctetMultiple = (int) Math.pow(2, (8 - (mask - bitPrefix)));
-
-            String[] octets = route.network.split("\\.");
-
-            StringBuilder prefixBuilder = new StringBuilder();
-            for (int i = 0; i < fixedOctet; i++) {
-                prefixBuilder.append(octets[i]);
-                prefixBuilder.append(".");
+            Policy policy = exportPolicies[neighbor.id];
+            if (policy.permitsAll()) {
+                forwardWithdraw(neighbor, message);
+                continue;
             }
 
-            int startOfRange = (Integer.parseInt(octets[fixedOctet]) / startingOctetMultiple) * startingOctetMultiple;
-            int endOfRange = startOfRange + startingOctetMultiple - 1;
-
-            StringBuilder firstIPBuilder = new StringBuilder();
-            StringBuilder lastIPBuilder = new StringBuilder();
-
-            firstIPBuilder.append(prefixBuilder);
-            firstIPBuilder.append(startOfRange);
-            lastIPBuilder.append(prefixBuilder);
-            lastIPBuilder.append(endOfRange);
-
-            for (int i = 0; i < 3 - fixedOctet; i++) {
-                firstIPBuilder.append(".0");
-                lastIPBuilder.append(".255");
+            List<WithdrawMessage.WithdrawNetwork> permitted = new ArrayList<>(networks.length);
+            for (int i = 0; i < networks.length; i++) {
+                Prefix prefix = prefixes.get(i);
+                if (policy.permits(prefix.network, prefix.length, null, source.relation, 0)) {
+                    permitted.add(networks[i]);
+                }
             }
+            if (permitted.size() == networks.length) {
+                forwardWithdraw(neighbor, message);
+            } else if (!permitted.isEmpty()) {
+                forwardWithdraw(neighbor, new WithdrawMessage(message.src, message.dst, permitted.toArray(new WithdrawMessage.WithdrawNetwork[0])));
+            }
+        }
+    }
 
-            return firstIPBuilder + "-" + lastIPBuilder;
+    /**
+     * Updates the routing table with a route announced by a neighbor.
+     *
+     * @param newRoute Route to update the routing table with.
+     */
+    public void updateRoutingTable(Route newRoute) {
+        Set<Prefix> changedPrefixes = new HashSet<>();
+        getAdjRibIn(newRoute.nextHop).announce(newRoute, changedPrefixes);
+        updateBestRoutes(changedPrefixes);
+        if (journal != null) {
+            journal.announce(newRoute);
         }
     }
 
     /**
-     * Broadcasts an update or withdraw message to all neighbors.
+     * Returns the routes announced by a neighbor.
+     *
+     * @param neighbor Address of the neighbor.
+     * @return The neighbor's Adj-RIB-In.
+     */
+    private AdjRibIn getAdjRibIn(String neighbor) {
+        return adjRibIns.computeIfAbsent(neighbor, address -> new AdjRibIn(address, metrics));
+    }
+
+    /**
+     * Runs the decision process for each changed prefix, caching the best route for the prefix in the FIB.
      *
-     * @param message Message to broadcast.
+     * @param changedPrefixes Prefixes whose routes changed.
      */
-    private void broadcastAnnouncement(Message message) throws Exception {
-        for (String neighbor : ports.keySet()) {
-            if (!neighbor.equals(message.src)) {
-                forwardAnnouncement(neighbor, message);
+    private void updateBestRoutes(Set<Prefix> changedPrefixes) {
+        for (Prefix prefix : changedPrefixes) {
+            Route bestRoute = null;
+            for (AdjRibIn adjRibIn : adjRibIns.values()) {
+                for (Route route : adjRibIn.getRoutes(prefix)) {
+                    if (bestRoute == null || Route.DECISION_ORDER.compare(route, bestRoute) < 0) {
+                        bestRoute = route;
+                    }
+                }
+            }
+
+            if (bestRoute == null) {
+                fibChanged |= fib.remove(prefix.network, prefix.length) != null;
+            } else if (fib.get(prefix.network, prefix.length) != bestRoute) {
+                fib.put(prefix.network, prefix.length, bestRoute);
+                fibChanged = true;
             }
         }
     }
 
     /**
-     * Sends an update or withdraw message to all customers.
+     * Sends an update to a specific destination, through its Adj-RIB-Out if coalescing is enabled. The AS path sent
+     * is shared by every update for the route's attributes.
      *
-     * @param message Message to send.
+     * @param destination Destination to send the update to.
+     * @param params      Parameters of the update.
+     * @param route       Route the update announces.
      * @throws Exception If the message could not be sent.
      */
-    private void announceToCustomers(Message message) throws Exception {
-        for (String neighbor : ports.keySet()) {
-            if (!neighbor.equals(message.src) && relations.get(neighbor).equals("cust")) {
-                forwardAnnouncement(neighbor, message);
-            }
+    private void forwardUpdate(Neighbor destination, UpdateMessage.UpdateParams params, Route route) throws Exception {
+        UpdateMessage update = new UpdateMessage(destination.ourAddress, destination.address,
+                new UpdateMessage.PublicUpdateParams(params.network, params.netmask, route.attributes.prependedPath(asn)));
+        if (adjRibOuts == null) {
+            ribOutbox.send(destination, update);
+        } else {
+            adjRibOuts[destination.id].announce(route.prefix, update);
+            openWindow();
         }
     }
 
     /**
-     * Sends an update or withdraw message to a specific destination.
+     * Sends a withdraw message to a specific destination, through its Adj-RIB-Out if coalescing is enabled. Sent right
+     * away, a withdrawal of many networks is split into messages of at most MAX_WITHDRAW_NETWORKS networks, as the
+     * Adj-RIB-Out splits it, so that each fits in a datagram.
      *
      * @param destination Destination to send the message to.
      * @param message     Message to send.
      * @throws Exception If the message could not be sent.
      */
-    private void forwardAnnouncement(String destination, Message message) throws Exception {
-        Message update;
-        if (message instanceof UpdateMessage) {
-            update = new UpdateMessage(ourAddr(destination), destination, ((UpdateMessage) message).getPublicUpdateParams(asn));
+    private void forwardWithdraw(Neighbor destination, WithdrawMessage message) throws Exception {
+        WithdrawMessage.WithdrawNetwork[] networks = message.getWithdrawNetworks();
+        if (adjRibOuts == null) {
+            if (networks.length <= AdjRibOut.MAX_WITHDRAW_NETWORKS) {
+                ribOutbox.send(destination, new WithdrawMessage(destination.ourAddress, destination.address, networks));
+                return;
+            }
+            for (int i = 0; i < networks.length; i += AdjRibOut.MAX_WITHDRAW_NETWORKS) {
+                WithdrawMessage.WithdrawNetwork[] chunk = Arrays.copyOfRange(networks, i, Math.min(networks.length, i + AdjRibOut.MAX_WITHDRAW_NETWORKS));
+                ribOutbox.send(destination, new WithdrawMessage(destination.ourAddress, destination.address, chunk));
+            }
         } else {
-            update = new WithdrawMessage(ourAddr(destination), destination, ((WithdrawMessage) message).getWithdrawNetworks());
+            List<Prefix> prefixes = new ArrayList<>(networks.length);
+            for (WithdrawMessage.WithdrawNetwork network : networks) {
+                prefixes.add(Prefix.parse(network.network, network.netmask));
+            }
+            adjRibOuts[destination.id].withdraw(prefixes, networks);
+            openWindow();
         }
-        send(destination, gson.toJson(update));
     }
 
     /**
@@ -471,127 +853,111 @@ public class Router {
      * @param message Data message.
      */
     public void handleData(DataMessage message) throws Exception {
-        Optional<Route> bestRoute = getBestRoute(message.dst);
-        Optional<Route> srcRoute = getBestRoute(message.src);
-
-        if (bestRoute.isEmpty() && srcRoute.isPresent()) {
-            send(srcRoute.get().nextHop, gson.toJson(new NoRouteMessage(ourAddr(message.src), message.src)));
-        } else if (srcRoute.isPresent()) {
-            String srcRouter = srcRoute.get().nextHop;
-            String dstRouter = bestRoute.get().nextHop;
-
-            if (relations.get(srcRouter).equals("cust") || relations.get(dstRouter).equals("cust")) {
-                send(bestRoute.get().nextHop, gson.toJson(message));
-            } else {
-                send(srcRouter, gson.toJson(new NoRouteMessage(ourAddr(message.src), message.src)));
-            }
+        ByteBuffer buffer = ribBufferPool.acquire();
+        try {
+            MessageCodec.encode(message, buffer);
+            buffer.flip();
+            forwardData(ribOutbox, ribDestinationCache, buffer, Prefix.parseAddress(message.src), Prefix.parseAddress(message.dst));
+        } finally {
+            //The outbox copied the message, so the buffer can be reused.
+            ribBufferPool.release(buffer);
         }
-
     }
 
     /**
-     * Searches the routing table for the best route to the given IP address, based on the 5 rules to selecting
-     * a path.
+     * Forwards an encoded data message unchanged to the next hop, or sends a no route message if no legal route is
+     * found. Routes are looked up in the latest FIB snapshot, so this can be called from any thread.
      *
-     * @param ip The IP address to search for.
-     * @return The best route to the given IP address or an empty optional if no route was found.
-     */
-    private Optional<Route> getBestRoute(String ip) {
-        Optional<Route> bestRoute = Optional.empty();
-        for (Route route : routingTable) {
-            String binaryIP = toBinary(route.network);
-            String prefix = binaryIP.substring(0, route.netmask);
-            if (toBinary(ip).startsWith(prefix)) {
-                if (bestRoute.isEmpty()) {
-                    //If we don't have a best route yet.
-                    bestRoute = Optional.of(route);
-                } else if (prefix.length() > bestRoute.get().netmask) {
-                    //If the matching prefix is longer than the current best route
-                    bestRoute = Optional.of(route);
-                } else if (prefix.length() == bestRoute.get().netmask) {
-                    if (route.localpref > bestRoute.get().localpref) {
-                        //If the localpref is higher than the current best route
-                        bestRoute = Optional.of(route);
-                    } else if (route.localpref == bestRoute.get().localpref) {
-                        if (route.selfOrigin && !bestRoute.get().selfOrigin) {
-                            //If the route is self-originated and the current best route is not
-                            bestRoute = Optional.of(route);
-                        } else if (route.selfOrigin == bestRoute.get().selfOrigin) {
-                            if (route.ASPath.size() < bestRoute.get().ASPath.size()) {
-                                //If the ASPath is shorter than the current best route
-                                bestRoute = Optional.of(route);
-                            } else if (route.ASPath.size() == bestRoute.get().ASPath.size()) {
-                                if (route.origin == bestRoute.get().origin) {
-                                    if (Integer.parseInt(route.nextHop.replace(".", "")) < Integer.parseInt(bestRoute.get().nextHop.replace(".", ""))) {
-                                        //If the next hop is lower than the current best route
-                                        bestRoute = Optional.of(route);
-                                    }
-                                } else if (route.origin.equals(IGP) && !bestRoute.get().origin.equals(IGP)) {
-                                    //If the route is IGP and the current best route is EGP or UNK
-                                    bestRoute = Optional.of(route);
-                                } else if (route.origin.equals(EGP) && bestRoute.get().origin.equals(UNK)) {
-                                    //If the route is EGP and the current best route is UNK
-                                    bestRoute = Optional.of(route);
-                                }
-                            }
-                        }
-                    }
-                }
-            }
+     * @param outbox Outbox of the calling thread.
+     * @param cache  Destination cache of the calling thread.
+     * @param packet Buffer containing the data message.
+     * @param src    Source address of the data message.
+     * @param dst    Destination address of the data message.
+     * @throws Exception If a message could not be sent.
+     */
+    void forwardData(Outbox outbox, DestinationCache cache, ByteBuffer packet, int src, int dst) throws Exception {
+        PrefixTrie<Route> snapshot = fibSnapshot;
+        long start = metrics.timed ? System.nanoTime() : 0;
+        int bestHop = nextHop(cache, snapshot, dst);
+        int srcHop = nextHop(cache, snapshot, src);
+        if (metrics.timed) {
+            metrics.lookupLatency.record(System.nanoTime() - start);
+        }
+        if (srcHop == DestinationCache.NO_ROUTE) {
+            return;
         }
-        return bestRoute;
+
+        if (bestHop != DestinationCache.NO_ROUTE && forwardVerdicts[srcHop * neighborsById.length + bestHop]) {
+            outbox.send(neighborsById[bestHop], packet);
+            return;
+        }
+        Neighbor srcRouter = neighborsById[srcHop];
+        metrics.noRoute.increment();
+        String srcAddress = Prefix.formatAddress(src);
+        outbox.send(srcRouter, new NoRouteMessage(ourAddr(srcAddress), srcAddress));
     }
 
     /**
-     * Converts an IP address to a binary string.
+     * Finds the neighbor an address is routed to, in a destination cache or else in a FIB snapshot.
      *
-     * @param ip The IP address to convert.
-     * @return The binary string representation of the IP address.
+     * @param cache    Destination cache of the calling thread, which the result is cached in.
+     * @param snapshot The FIB snapshot to look up in.
+     * @param address  The address to look up.
+     * @return The id of the next hop neighbor, or DestinationCache.NO_ROUTE if there is no route.
      */
-    public static String toBinary(String ip) {
-        String[] quads = ip.split("\\.");
-        StringBuilder binaryIP = new StringBuilder();
-        for (String quad : quads) {
-            binaryIP.append(Integer.toBinaryString(1 << 8 | Integer.parseInt(quad)).substring(1));
+    private int nextHop(DestinationCache cache, PrefixTrie<Route> snapshot, int address) {
+        int hop = cache.get(snapshot.version(), address);
+        if (hop == DestinationCache.MISS) {
+            Route route = snapshot.longestMatch(address);
+            hop = route == null ? DestinationCache.NO_ROUTE : neighborId(route.peer);
+            cache.put(address, hop);
         }
-        return binaryIP.toString();
+        return hop;
     }
 
     /**
-     * Converts a binary string to an IP address.
+     * Finds the neighbor with an address.
      *
-     * @param ip The binary string to convert.
-     * @return The IP address.
+     * @param address The address of the neighbor, as an int.
+     * @return The id of the neighbor, or DestinationCache.NO_ROUTE if no neighbor has the address.
      */
-    public static String toIP(String ip) {
-        StringBuilder ipString = new StringBuilder();
-        for (int i = 0; i <= ip.length() - 8; i += 8) {
-            ipString.append(Integer.parseInt(ip.substring(i, i + 8), 2));
-            if (i != ip.length() - 8) {
-                ipString.append(".");
-            }
-        }
-        return ipString.toString();
+    private int neighborId(int address) {
+        int index = Arrays.binarySearch(neighborAddresses, address);
+        return index < 0 ? DestinationCache.NO_ROUTE : neighborIdsByAddress[index];
     }
 
     /**
-     * Converts an IP address to a BigInteger.
+     * Searches the latest FIB snapshot for the best route to the given IP address, which is the route for the longest
+     * matching prefix that won the decision process.
      *
-     * @param ip The IP address to convert.
-     * @return The BigInteger representation of the IP address.
+     * @param ip The IP address to search for.
+     * @return The best route to the given IP address or null if no route was found.
      */
-    public static BigInteger toBigInt(String ip) {
-        return new BigInteger("0" + toBinary(ip), 2);
+    public Route getBestRoute(int ip) {
+        return fibSnapshot.longestMatch(ip);
     }
 
     /**
-     * Handles a dump message by sending the routing table to the sender.
+     * Handles a dump message by sending the routing table to the sender. A table too large for one datagram is
+     * streamed in chunks, sent between batches of control messages.
      *
      * @param message The dump message to handle.
      * @throws Exception If the message could not be sent.
      */
     private void handleDump(DumpMessage message) throws Exception {
-        send(message.src, gson.toJson(new TableMessage(ourAddr(message.src), message.src, routingTable)));
+        Neighbor source = neighbors.get(message.src);
+        if (source == null) {
+            return;
+        }
+        List<Route> routingTable = new ArrayList<>();
+        for (AdjRibIn adjRibIn : adjRibIns.values()) {
+            routingTable.addAll(adjRibIn.getRoutes());
+        }
+        //The first chunk goes out with this batch, which is the whole table unless it doesn't fit in one datagram.
+        TableDump dump = new TableDump(source, routingTable);
+        if (!dump.sendChunk(ribOutbox, dumpBuffer)) {
+            tableDumps.add(dump);
+        }
     }
 
     /**
@@ -601,79 +967,83 @@ public class Router {
      * @throws Exception If the message could not be sent.
      */
     private void handleWithdraw(WithdrawMessage message) throws Exception {
+        Neighbor source = neighbors.get(message.src);
+        if (source == null) {
+            return;
+        }
+
+        List<Prefix> prefixes = new ArrayList<>();
+        List<WithdrawMessage.WithdrawNetwork> networks = new ArrayList<>();
+        AdjRibIn adjRibIn = getAdjRibIn(source.address);
         for (WithdrawMessage.WithdrawNetwork withdrawNetwork : message.getWithdrawNetworks()) {
-            //Check all the routes that have been aggregated.
-            for (Route route : routesAggregated.keySet()) {
-                if (route.network.equals(withdrawNetwork.network)
-                        && route.getNetmask().equals(withdrawNetwork.netmask)
-                        && route.nextHop.equals(message.src)) {
-                    disaggregateAndWithdraw(route);
-                    break;
-                }
+            Prefix prefix = Prefix.parse(withdrawNetwork.network, withdrawNetwork.netmask);
+            //Suppressed routes were already withdrawn, so their withdrawals are only counted by the damping.
+            if (damping == null || damping.withdraw(source.id, prefix, adjRibIn.isAnnounced(prefix), nowMillis())) {
+                prefixes.add(prefix);
+                networks.add(withdrawNetwork);
             }
-            routingTable.removeIf(route -> route.network.equals(withdrawNetwork.network)
-                    && route.getNetmask().equals(withdrawNetwork.netmask)
-                    && route.nextHop.equals(message.src));
         }
-
-        updateAppropriate(message);
-    }
-
-    /**
-     * Withdraws a route that has been previously aggregated.
-     *
-     * @param route The route to withdraw.
-     */
-    private void disaggregateAndWithdraw(Route route) {
-        //Find the route that's actually in the table and remove it
-        AggregatedRoute aggregatedRoute = routesAggregated.get(route);
-        routingTable.remove(aggregatedRoute);
-
-        //Add the disaggregated routes back to the table
-        List<Route> routesToAdd = aggregatedRoute.getRoutesInside();
-        routesToAdd.remove(route);
-
-        for (Route r : routesToAdd) {
-            routesAggregated.remove(r);
-            if (!checkAggregate(r)) {
-                routingTable.add(r);
+        if (networks.size() < message.getWithdrawNetworks().length) {
+            if (networks.isEmpty()) {
+                return;
             }
+            message = new WithdrawMessage(message.src, message.dst, networks.toArray(new WithdrawMessage.WithdrawNetwork[0]));
         }
+        withdraw(source, message, prefixes);
     }
 
     /**
-     * Receives and handles a message from the given selection key.
+     * Withdraws networks announced by a neighbor and forwards the withdrawal.
      *
-     * @param key The selection key to receive the message from. Must be readable.
-     * @return Message received.
-     * @throws IOException If the message could not be read.
+     * @param source   Neighbor the networks were announced by.
+     * @param message  The withdrawal message to forward.
+     * @param prefixes Prefixes of the withdrawn networks, in the same order as in the message.
+     * @throws Exception If the message could not be sent.
      */
-    private String readMessage(SelectionKey key) throws IOException {
-        // Read the incoming data
-        ByteBuffer buffer = ByteBuffer.allocate(65535);
-        DatagramChannel channel = (DatagramChannel) key.channel();
-        channel.receive(buffer);
+    private void withdraw(Neighbor source, WithdrawMessage message, List<Prefix> prefixes) throws Exception {
+        Set<Prefix> changedPrefixes = new HashSet<>();
+        getAdjRibIn(source.address).withdraw(prefixes, changedPrefixes);
+        updateBestRoutes(changedPrefixes);
+        if (journal != null) {
+            journal.withdraw(source.address, prefixes);
+        }
 
-        buffer.flip();
-        return new String(buffer.array(), 0, buffer.limit());
+        exportWithdraw(source, message, prefixes);
     }
 
     /**
      * Creates a router with the given ASN and connections, then runs it.
      *
-     * @param args First argument is the ASN, the rest are the connections formatted as port-ip-relationship.
+     * @param args First argument is the ASN, the rest are the connections formatted as port-ip-relationship. Options
+     *             formatted as --key=value may be given anywhere.
      * @throws Exception If the router could not be created or run.
      */
     public static void main(String[] args) throws Exception {
-        if (args.length < 2) {
-            System.out.println("Usage: ./3700router <asn> <connections>");
+        RouterConfig config;
+        try {
+            config = RouterConfig.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            System.out.println("Usage: ./3700router <asn> <connections> [--receive-budget=n] [--data-workers=n] [--mrai-ms=n]"
+                    + " [--policy=file] [--dest-cache=n] [--restart-ms=n] [--damping] [--damping-half-life-ms=n]"
+                    + " [--damping-suppress=n] [--damping-reuse=n] [--state-dir=dir] [--snapshot-records=n]"
+                    + " [--stats-port=n] [--metrics]");
             System.exit(1);
+            return;
         }
 
-        int asn = Integer.parseInt(args[0]);
-        String[] connections = Arrays.copyOfRange(args, 1, args.length);
-
-        Router router = new Router(asn, connections);
+        Router router = new Router(config);
+        if (config.printMetrics) {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                for (BatchMetrics metrics : router.getMetrics()) {
+                    System.out.println(metrics);
+                }
+                System.out.println("fib: version=" + router.getFibVersion());
+                System.out.println("adj-rib-out: saved=" + router.getMessagesSaved());
+                System.out.println("attributes: interned=" + Attributes.internedCount());
+                System.out.println("stats: " + router.getMetricsJson());
+            }));
+        }
         router.run();
     }
 }
@@ -0,0 +1,166 @@
+package remote;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The configuration of a router, parsed from its command line. Positional arguments are the ASN followed by the
+ * connections, and options are given anywhere as --key=value.
+ */
+public class RouterConfig {
+    public int asn;
+    public String[] connections;
+    //Most datagrams read from one channel each time it is selected, before moving on to the next channel.
+    public int receiveBudget = 64;
+    //Number of threads reading from neighbors' channels and forwarding data messages.
+    public int dataWorkers = 1;
+    //Length of the window in which announcements and withdrawals to a neighbor are coalesced, 0 to send right away.
+    public int mraiMillis = 0;
+    //Path of the file import and export policies are loaded from, or null for the default policies.
+    public String policyFile = null;
+    //Most destinations whose next hop each forwarding thread caches, 0 to always look up the FIB.
+    public int destCacheSize = 4096;
+    //Time a restarted neighbor's routes are kept as stale while it announces them again, 0 to not keep them.
+    public int restartMillis = 120000;
+    //Whether routes that flap are suppressed, and the half-life of their penalty and the penalties at which they are
+    //suppressed and used again.
+    public boolean damping = false;
+    public int dampingHalfLifeMillis = 900000;
+    public int dampingSuppress = 2000;
+    public int dampingReuse = 750;
+    //Directory the RIB is journaled to and restored from on startup, or null to not persist it.
+    public String stateDir = null;
+    //Number of journaled announcements and withdrawals after which the RIB is snapshotted.
+    public int snapshotRecords = 100000;
+    //Loopback UDP port metrics are served on, 0 for none.
+    public int statsPort = 0;
+    //Whether batch metrics are printed when the router shuts down.
+    public boolean printMetrics = false;
+
+    /**
+     * Creates a configuration with default options.
+     *
+     * @param asn         AS number of the router.
+     * @param connections List of connections in the form of "port-neighbor-relation".
+     */
+    public RouterConfig(int asn, String[] connections) {
+        this.asn = asn;
+        this.connections = connections;
+    }
+
+    /**
+     * Parses a configuration from command line arguments.
+     *
+     * @param args the arguments, the ASN and connections along with any options.
+     * @return the parsed configuration.
+     * @throws IllegalArgumentException If an argument is missing, malformed or an unknown option.
+     */
+    public static RouterConfig parse(String[] args) {
+        List<String> positional = new ArrayList<>();
+        List<String> options = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--")) {
+                options.add(arg);
+            } else {
+                positional.add(arg);
+            }
+        }
+        if (positional.size() < 2) {
+            throw new IllegalArgumentException("Expected an ASN and at least one connection");
+        }
+
+        RouterConfig config = new RouterConfig(Integer.parseInt(positional.get(0)),
+                positional.subList(1, positional.size()).toArray(new String[0]));
+        for (String option : options) {
+            int equals = option.indexOf('=');
+            String key = equals < 0 ? option.substring(2) : option.substring(2, equals);
+            String value = equals < 0 ? "true" : option.substring(equals + 1);
+            config.set(key, value);
+        }
+        //Checked once all options are set, as the two thresholds may be given in either order.
+        if (config.dampingReuse < 1 || config.dampingReuse >= config.dampingSuppress) {
+            throw new IllegalArgumentException("damping-reuse must be at least 1 and below damping-suppress");
+        }
+        return config;
+    }
+
+    /**
+     * Sets an option by its command line name.
+     *
+     * @param key   name of the option, without the leading dashes.
+     * @param value value of the option.
+     * @throws IllegalArgumentException If the option is unknown or its value is invalid.
+     */
+    private void set(String key, String value) {
+        switch (key) {
+            case "receive-budget":
+                receiveBudget = Integer.parseInt(value);
+                if (receiveBudget < 1) {
+                    throw new IllegalArgumentException("receive-budget must be at least 1");
+                }
+                break;
+            case "data-workers":
+                dataWorkers = Integer.parseInt(value);
+                if (dataWorkers < 1) {
+                    throw new IllegalArgumentException("data-workers must be at least 1");
+                }
+                break;
+            case "mrai-ms":
+                mraiMillis = Integer.parseInt(value);
+                if (mraiMillis < 0) {
+                    throw new IllegalArgumentException("mrai-ms must not be negative");
+                }
+                break;
+            case "policy":
+                policyFile = value;
+                break;
+            case "dest-cache":
+                destCacheSize = Integer.parseInt(value);
+                if (destCacheSize < 0 || destCacheSize > 1 << 24) {
+                    throw new IllegalArgumentException("dest-cache must be from 0 to 16777216");
+                }
+                break;
+            case "restart-ms":
+                restartMillis = Integer.parseInt(value);
+                if (restartMillis < 0) {
+                    throw new IllegalArgumentException("restart-ms must not be negative");
+                }
+                break;
+            case "damping":
+                damping = Boolean.parseBoolean(value);
+                break;
+            case "damping-half-life-ms":
+                dampingHalfLifeMillis = Integer.parseInt(value);
+                if (dampingHalfLifeMillis < 1) {
+                    throw new IllegalArgumentException("damping-half-life-ms must be at least 1");
+                }
+                break;
+            case "damping-suppress":
+                dampingSuppress = Integer.parseInt(value);
+                break;
+            case "damping-reuse":
+                dampingReuse = Integer.parseInt(value);
+                break;
+            case "state-dir":
+                stateDir = value;
+                break;
+            case "snapshot-records":
+                snapshotRecords = Integer.parseInt(value);
+                if (snapshotRecords < 1) {
+                    throw new IllegalArgumentException("snapshot-records must be at least 1");
+                }
+                break;
+            case "stats-port":
+                statsPort = Integer.parseInt(value);
+                if (statsPort < 0 || statsPort > 65535) {
+                    throw new IllegalArgumentException("stats-port must be a port number");
+                }
+                break;
+            case "metrics":
+                printMetrics = Boolean.parseBoolean(value);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown option --" + key);
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package remote;
+
+import com.google.gson.stream.JsonWriter;
+import messages.Message;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency histograms of a router, shared by all of its threads. Recording never allocates or takes a
+ * lock, so it is done on the hot paths; the metrics are read when they are scraped from the stats port or printed at
+ * shutdown.
+ */
+public class RouterMetrics {
+    //Messages received, by type.
+    private final LongAdder[] messages = new LongAdder[Message.MessageType.values().length];
+    //Data messages answered with a no route message.
+    public final LongAdder noRoute = new LongAdder();
+    //Routes aggregated into another, and aggregated routes split up again by a withdrawal.
+    public final LongAdder aggregations = new LongAdder();
+    public final LongAdder disaggregations = new LongAdder();
+    //Re-announcements of stale routes absorbed after a neighbor restarted, and stale routes withdrawn in a sweep.
+    public final LongAdder staleRefreshed = new LongAdder();
+    public final LongAdder staleSwept = new LongAdder();
+    //Routes suppressed by flap damping, announcements and withdrawals of suppressed routes held back, and suppressed
+    //routes used again.
+    public final LongAdder dampingSuppressed = new LongAdder();
+    public final LongAdder dampingHeld = new LongAdder();
+    public final LongAdder dampingReused = new LongAdder();
+    //Destination cache lookups answered from the cache and from the FIB, and entries evicted to make room.
+    public final LongAdder destCacheHits = new LongAdder();
+    public final LongAdder destCacheMisses = new LongAdder();
+    public final LongAdder destCacheEvictions = new LongAdder();
+    //Datagrams received from and sent to each neighbor, by neighbor id.
+    private final LongAdder[] received;
+    private final LongAdder[] sent;
+    //Whether latencies are recorded. Timing costs two clock reads, so it is only done when the metrics are read.
+    public final boolean timed;
+    //Time to decode a control message, to look up the routes of a data message, and to flush a neighbor's queue.
+    public final LatencyHistogram parseLatency = new LatencyHistogram();
+    public final LatencyHistogram lookupLatency = new LatencyHistogram();
+    public final LatencyHistogram sendLatency = new LatencyHistogram();
+
+    /**
+     * Creates metrics with every counter at 0.
+     *
+     * @param neighborCount the number of neighbors of the router.
+     * @param timed         whether latencies are recorded.
+     */
+    public RouterMetrics(int neighborCount, boolean timed) {
+        for (int i = 0; i < messages.length; i++) {
+            messages[i] = new LongAdder();
+        }
+        this.received = new LongAdder[neighborCount];
+        this.sent = new LongAdder[neighborCount];
+        for (int i = 0; i < neighborCount; i++) {
+            received[i] = new LongAdder();
+            sent[i] = new LongAdder();
+        }
+        this.timed = timed;
+    }
+
+    /**
+     * Records a datagram received from a neighbor.
+     *
+     * @param neighborId id of the neighbor.
+     * @param type       type of the message, or null if it could not be read.
+     */
+    public void recordReceived(int neighborId, Message.MessageType type) {
+        received[neighborId].increment();
+        if (type != null) {
+            messages[type.ordinal()].increment();
+        }
+    }
+
+    /**
+     * Records datagrams sent to a neighbor.
+     *
+     * @param neighborId id of the neighbor.
+     * @param count      the number of datagrams.
+     */
+    public void recordSent(int neighborId, int count) {
+        sent[neighborId].add(count);
+    }
+
+    /**
+     * Returns the number of messages of a type received.
+     *
+     * @param type the type of message.
+     * @return the number of messages.
+     */
+    public long getMessages(Message.MessageType type) {
+        return messages[type.ordinal()].sum();
+    }
+
+    /**
+     * Formats the metrics as a JSON object.
+     *
+     * @param neighbors   the neighbors of the router, by id.
+     * @param fibPrefixes the number of prefixes in the FIB.
+     * @return the metrics as JSON.
+     */
+    public String toJson(Neighbor[] neighbors, int fibPrefixes) {
+        StringWriter out = new StringWriter();
+        try (JsonWriter writer = new JsonWriter(out)) {
+            writer.beginObject();
+            writer.name("messages").beginObject();
+            for (Message.MessageType type : Message.MessageType.values()) {
+                writer.name(type.name()).value(messages[type.ordinal()].sum());
+            }
+            writer.endObject();
+            writer.name("noRoute").value(noRoute.sum());
+            writer.name("aggregations").value(aggregations.sum());
+            writer.name("disaggregations").value(disaggregations.sum());
+            writer.name("fibPrefixes").value(fibPrefixes);
+            writer.name("staleRefreshed").value(staleRefreshed.sum());
+            writer.name("staleSwept").value(staleSwept.sum());
+            writer.name("damping").beginObject();
+            writer.name("suppressed").value(dampingSuppressed.sum());
+            writer.name("held").value(dampingHeld.sum());
+            writer.name("reused").value(dampingReused.sum());
+            writer.endObject();
+            writer.name("destCache").beginObject();
+            writer.name("hits").value(destCacheHits.sum());
+            writer.name("misses").value(destCacheMisses.sum());
+            writer.name("evictions").value(destCacheEvictions.sum());
+            writer.endObject();
+
+            writer.name("neighbors").beginObject();
+            for (Neighbor neighbor : neighbors) {
+                writer.name(neighbor.address).beginObject();
+                writer.name("rx").value(received[neighbor.id].sum());
+                writer.name("tx").value(sent[neighbor.id].sum());
+                writer.endObject();
+            }
+            writer.endObject();
+
+            if (timed) {
+                writer.name("latencyNanos").beginObject();
+                writeLatency(writer, "parse", parseLatency);
+                writeLatency(writer, "lookup", lookupLatency);
+                writeLatency(writer, "send", sendLatency);
+                writer.endObject();
+            }
+            writer.endObject();
+        } catch (IOException e) {
+            //A StringWriter doesn't throw.
+            throw new IllegalStateException(e);
+        }
+        return out.toString();
+    }
+
+    private static void writeLatency(JsonWriter writer, String name, LatencyHistogram histogram) throws IOException {
+        writer.name(name).beginObject();
+        writer.name("count").value(histogram.count());
+        writer.name("mean").value(histogram.mean());
+        writer.name("p50").value(histogram.percentile(50));
+        writer.name("p99").value(histogram.percentile(99));
+        writer.name("p999").value(histogram.percentile(99.9));
+        writer.endObject();
+    }
+}
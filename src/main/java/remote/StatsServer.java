@@ -0,0 +1,56 @@
+package remote;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Serves a router's metrics on a loopback UDP port. Any datagram sent to the port is answered with the metrics as a
+ * JSON object, so they can be scraped with a one-line script, e.g. {@code echo | nc -u -w1 127.0.0.1 <port>}. The
+ * port is bound to the loopback address only, so the metrics can't be read from another host.
+ */
+public class StatsServer {
+    private final Router router;
+    private final DatagramChannel channel;
+
+    /**
+     * Creates a server, binding its port.
+     *
+     * @param router the router whose metrics are served.
+     * @param port   the port to serve on.
+     * @throws IOException If the port could not be bound.
+     */
+    public StatsServer(Router router, int port) throws IOException {
+        this.router = router;
+        this.channel = DatagramChannel.open();
+        this.channel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+    }
+
+    /**
+     * Answers requests until the server is closed.
+     *
+     * @throws IOException If a request could not be answered.
+     */
+    public void run() throws IOException {
+        ByteBuffer request = ByteBuffer.allocate(512);
+        while (channel.isOpen()) {
+            request.clear();
+            SocketAddress client = channel.receive(request);
+            byte[] stats = router.getMetricsJson().getBytes(StandardCharsets.UTF_8);
+            channel.send(ByteBuffer.wrap(stats), client);
+        }
+    }
+
+    /**
+     * Closes the server's port, which ends run().
+     *
+     * @throws IOException If the port could not be closed.
+     */
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,55 @@
+package remote;
+
+import json.MessageCodec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * A table dump being streamed to a neighbor, one datagram sized chunk at a time. The routes are the ones in the RIB
+ * when the dump was asked for; routes are never modified, so holding on to them keeps the dump consistent while the
+ * RIB goes on changing.
+ */
+public class TableDump {
+    public final Neighbor neighbor;
+    private final List<Route> routes;
+    //Index of the first route not sent yet, and sequence number of the next chunk.
+    private int next;
+    private int seq;
+
+    /**
+     * Creates a dump, with no chunk sent yet.
+     *
+     * @param neighbor the neighbor to send the table to.
+     * @param routes   the routes of the table.
+     */
+    public TableDump(Neighbor neighbor, List<Route> routes) {
+        this.neighbor = neighbor;
+        this.routes = routes;
+    }
+
+    /**
+     * Queues the next chunk of the table to be sent.
+     *
+     * @param outbox  the outbox to queue the chunk in.
+     * @param scratch buffer to encode the chunk in, with room for MessageCodec.MAX_DATAGRAM bytes.
+     * @return true if this was the last chunk.
+     * @throws IOException If the chunk could not be encoded.
+     */
+    public boolean sendChunk(Outbox outbox, ByteBuffer scratch) throws IOException {
+        scratch.clear();
+        next = MessageCodec.encodeTableChunk(neighbor.ourAddress, neighbor.address, routes, next, seq++, scratch);
+        outbox.send(neighbor, scratch);
+        return isDone();
+    }
+
+    /**
+     * Returns whether every chunk has been sent.
+     *
+     * @return true once the last chunk is queued.
+     */
+    public boolean isDone() {
+        return next == routes.size() && seq > 0;
+    }
+}
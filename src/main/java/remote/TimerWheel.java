@@ -0,0 +1,133 @@
+package remote;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A hashed timer wheel: deadlines are rounded up to a tick and kept in the slot of their tick, so scheduling is O(1)
+ * and each tick only looks at one slot. Deadlines further away than one turn of the wheel wait in their slot until
+ * the wheel comes round to their tick. The earliest tick scheduled is tracked, so expire() skips straight to it and
+ * callers only need to wake up when it is due. Not thread safe.
+ *
+ * @param <T> the type of item scheduled.
+ */
+public class TimerWheel<T> {
+    private static final int SLOTS = 1024;
+
+    private final long tickMillis;
+    private final List<List<Entry<T>>> slots = new ArrayList<>(SLOTS);
+    //The next tick to expire. Every entry's tick is at or after it. The clock may start anywhere, so until the first
+    //expire() it is as low as it goes.
+    private long currentTick = Long.MIN_VALUE;
+    //The earliest tick of any entry, if there are any.
+    private long earliestTick;
+    private int size;
+
+    private static final class Entry<T> {
+        final T item;
+        final long tick;
+
+        Entry(T item, long tick) {
+            this.item = item;
+            this.tick = tick;
+        }
+    }
+
+    /**
+     * Creates an empty wheel.
+     *
+     * @param tickMillis the length of a tick in milliseconds, which deadlines are rounded up to.
+     */
+    public TimerWheel(long tickMillis) {
+        this.tickMillis = tickMillis;
+        for (int i = 0; i < SLOTS; i++) {
+            slots.add(new ArrayList<>());
+        }
+    }
+
+    /**
+     * Schedules an item to expire once a deadline has passed.
+     *
+     * @param item           the item.
+     * @param deadlineMillis the deadline, in milliseconds on the clock passed to expire().
+     */
+    public void schedule(T item, long deadlineMillis) {
+        long tick = Math.max(Math.floorDiv(deadlineMillis + tickMillis - 1, tickMillis), currentTick);
+        slots.get(slot(tick)).add(new Entry<>(item, tick));
+        if (size == 0 || tick < earliestTick) {
+            earliestTick = tick;
+        }
+        size++;
+    }
+
+    /**
+     * Expires the items whose deadline has passed.
+     *
+     * @param nowMillis the current time in milliseconds.
+     * @param expired   collects the expired items, in order of their tick.
+     */
+    public void expire(long nowMillis, List<T> expired) {
+        long lastTick = Math.floorDiv(nowMillis, tickMillis);
+        while (size > 0 && earliestTick <= lastTick) {
+            //Ticks before the earliest have nothing to expire, so they are skipped.
+            currentTick = earliestTick;
+            for (Iterator<Entry<T>> it = slots.get(slot(currentTick)).iterator(); it.hasNext(); ) {
+                Entry<T> entry = it.next();
+                if (entry.tick == currentTick) {
+                    it.remove();
+                    size--;
+                    expired.add(entry.item);
+                }
+            }
+            currentTick++;
+            if (size > 0) {
+                earliestTick = findEarliestTick();
+            }
+        }
+        currentTick = Math.max(currentTick, lastTick + 1);
+    }
+
+    /**
+     * Finds the earliest tick of any entry, looking at the slots in order from the current tick. The first entry
+     * whose tick is its slot's tick within one turn is the earliest; if there is none, every entry has been looked
+     * at, and the earliest is the lowest tick seen.
+     */
+    private long findEarliestTick() {
+        long lowestTick = Long.MAX_VALUE;
+        for (long tick = currentTick; tick < currentTick + SLOTS; tick++) {
+            for (Entry<T> entry : slots.get(slot(tick))) {
+                if (entry.tick == tick) {
+                    return tick;
+                }
+                lowestTick = Math.min(lowestTick, entry.tick);
+            }
+        }
+        return lowestTick;
+    }
+
+    /**
+     * Returns the time the earliest tick scheduled ends, when expire() next has anything to expire.
+     *
+     * @return the time in milliseconds, or Long.MAX_VALUE if nothing is scheduled.
+     */
+    public long nextExpiryMillis() {
+        return size == 0 ? Long.MAX_VALUE : earliestTick * tickMillis;
+    }
+
+    /**
+     * Returns the slot of a tick, which may be negative.
+     */
+    private static int slot(long tick) {
+        return (int) Math.floorMod(tick, (long) SLOTS);
+    }
+
+    /**
+     * Returns the number of items scheduled.
+     *
+     * @return the number of items.
+     */
+    public int size() {
+        return size;
+    }
+}
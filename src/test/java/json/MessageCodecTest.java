@@ -0,0 +1,148 @@
+package json;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import messages.*;
+import org.junit.jupiter.api.Test;
+import remote.Prefix;
+import remote.Route;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MessageCodecTest {
+
+    private static ByteBuffer bytes(String json) {
+        return ByteBuffer.wrap(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String encode(Message message) throws Exception {
+        ByteBuffer buffer = ByteBuffer.allocate(65535);
+        MessageCodec.encode(message, buffer);
+        buffer.flip();
+        return StandardCharsets.UTF_8.decode(buffer).toString();
+    }
+
+    @Test
+    void testDecodeUpdate() throws Exception {
+        Message message = MessageCodec.decode(bytes("{\"type\": \"update\", \"src\": \"192.168.0.2\", \"dst\": \"192.168.0.1\", \"msg\": {\"network\": \"192.168.0.0\", \"netmask\": \"255.255.255.0\", \"localpref\": 100, \"ASPath\": [1, 2], \"origin\": \"EGP\", \"selfOrigin\": true}}"));
+
+        UpdateMessage update = assertInstanceOf(UpdateMessage.class, message);
+        assertEquals("192.168.0.2", update.src);
+        UpdateMessage.UpdateParams params = update.getUpdateParams();
+        assertEquals("192.168.0.0", params.network);
+        assertEquals("255.255.255.0", params.netmask);
+        assertEquals(100, params.localpref);
+        assertEquals(List.of(1, 2), params.ASPath);
+        assertEquals(UpdateMessage.UpdateParams.Origin.EGP, params.origin);
+        assertTrue(params.selfOrigin);
+    }
+
+    @Test
+    void testDecodeTypeAfterMsg() throws Exception {
+        Message message = MessageCodec.decode(bytes("{\"src\": \"type\", \"msg\": [{\"network\": \"10.0.0.0\", \"netmask\": \"255.0.0.0\"}], \"type\": \"withdraw\", \"dst\": \"10.0.0.1\"}"));
+
+        WithdrawMessage withdraw = assertInstanceOf(WithdrawMessage.class, message);
+        assertEquals(1, withdraw.getWithdrawNetworks().length);
+        assertEquals("10.0.0.0", withdraw.getWithdrawNetworks()[0].network);
+    }
+
+    @Test
+    void testDecodeRejectsUnknownOrigin() {
+        assertThrows(JsonParseException.class, () -> MessageCodec.decode(bytes("{\"type\": \"update\", \"src\": \"192.168.0.2\", \"dst\": \"192.168.0.1\", \"msg\": {\"network\": \"192.168.0.0\", \"netmask\": \"255.255.255.0\", \"localpref\": 100, \"ASPath\": [1], \"origin\": \"BGP\", \"selfOrigin\": true}}")));
+    }
+
+    @Test
+    void testDecodeRejectsMalformedMessages() {
+        assertThrows(JsonParseException.class, () -> MessageCodec.decode(bytes("{\"type\": \"table\", \"src\": \"10.0.0.1\", \"dst\": \"10.0.0.2\", \"msg\": [{\"network\": \"10.0.0.0\", \"netmask\": \"255.0.0.0\"}]}")));
+        assertThrows(JsonParseException.class, () -> MessageCodec.decode(bytes("{\"type\": \"update\", \"src\": \"10.0.0.2\", \"dst\": \"10.0.0.1\", \"msg\": {\"localpref\": \"high\"}}")));
+        assertThrows(JsonParseException.class, () -> MessageCodec.decode(bytes("{\"type\": \"withdraw\", \"src\": \"10.0.0.2\", \"dst\": \"10.0.0.1\", \"msg\": {}}")));
+        assertThrows(JsonParseException.class, () -> MessageCodec.decode(bytes("{\"type\": \"update\", \"src\": \"10.0.0.2\", \"dst\": \"10.0.0.1\"}")));
+    }
+
+    @Test
+    void testDecodeRejectsMissingNetworks() {
+        assertThrows(JsonParseException.class, () -> MessageCodec.decode(bytes("{\"type\": \"update\", \"src\": \"10.0.0.2\", \"dst\": \"10.0.0.1\", \"msg\": {\"netmask\": \"255.0.0.0\", \"localpref\": 100, \"ASPath\": [2], \"origin\": \"EGP\", \"selfOrigin\": false}}")));
+        assertThrows(JsonParseException.class, () -> MessageCodec.decode(bytes("{\"type\": \"update\", \"src\": \"10.0.0.2\", \"dst\": \"10.0.0.1\", \"msg\": {\"network\": \"10.0.0.0\", \"localpref\": 100, \"ASPath\": [2], \"origin\": \"EGP\", \"selfOrigin\": false}}")));
+        assertThrows(JsonParseException.class, () -> MessageCodec.decode(bytes("{\"type\": \"withdraw\", \"src\": \"10.0.0.2\", \"dst\": \"10.0.0.1\", \"msg\": [{\"network\": \"10.0.0.0\", \"netmask\": \"255.0.0.0\"}, {\"network\": \"11.0.0.0\"}]}")));
+        assertThrows(JsonParseException.class, () -> MessageCodec.decode(bytes("{\"type\": \"withdraw\", \"src\": \"10.0.0.2\", \"dst\": \"10.0.0.1\", \"msg\": [{\"netmask\": \"255.0.0.0\"}]}")));
+    }
+
+    @Test
+    void testDecodeEndOfRib() throws Exception {
+        Message message = MessageCodec.decode(bytes("{\"type\": \"eor\", \"src\": \"10.0.0.2\", \"dst\": \"10.0.0.1\", \"msg\": {}}"));
+
+        assertInstanceOf(EndOfRibMessage.class, message);
+        assertEquals("10.0.0.2", message.src);
+    }
+
+    @Test
+    void testDataRoundTrip() throws Exception {
+        String json = "{\"type\":\"data\",\"src\":\"10.0.0.25\",\"dst\":\"192.168.0.25\",\"msg\":{\"ignore\":\"this é\",\"n\":[1,2.5,true]}}";
+        assertEquals(json, encode(MessageCodec.decode(bytes(json))));
+    }
+
+    @Test
+    void testEncodeNoRouteAndTable() throws Exception {
+        assertEquals("{\"type\":\"no route\",\"src\":\"10.0.0.1\",\"dst\":\"10.0.0.2\",\"msg\":{}}",
+                encode(new NoRouteMessage("10.0.0.1", "10.0.0.2")));
+
+        Route route = new Route("10.0.0.2", Prefix.parse("11.0.0.0", "255.0.0.0"), 100, true, List.of(3), UpdateMessage.UpdateParams.Origin.EGP);
+        assertEquals("{\"type\":\"table\",\"src\":\"10.0.0.1\",\"dst\":\"10.0.0.2\",\"msg\":[{\"network\":\"11.0.0.0\",\"netmask\":\"255.0.0.0\",\"peer\":\"10.0.0.2\",\"localpref\":100,\"ASPath\":[3],\"selfOrigin\":true,\"origin\":\"EGP\"}]}",
+                encode(new TableMessage("10.0.0.1", "10.0.0.2", List.of(route))));
+    }
+
+    @Test
+    void testEncodeTableChunks() throws Exception {
+        Route small = new Route("10.0.0.2", Prefix.parse("11.0.0.0", "255.0.0.0"), 100, true, List.of(3), UpdateMessage.UpdateParams.Origin.EGP);
+        ByteBuffer buffer = ByteBuffer.allocate(65535);
+        assertEquals(1, MessageCodec.encodeTableChunk("10.0.0.1", "10.0.0.2", List.of(small), 0, 0, buffer));
+        assertEquals(encode(new TableMessage("10.0.0.1", "10.0.0.2", List.of(small))),
+                StandardCharsets.UTF_8.decode(buffer).toString());
+
+        List<Route> routes = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            routes.add(new Route("10.0.0.2", new Prefix(i << 8, 24), 100, false, List.of(1, 2, 3), UpdateMessage.UpdateParams.Origin.IGP));
+        }
+        int next = 0;
+        int seq = 0;
+        int decoded = 0;
+        while (next < routes.size()) {
+            buffer.clear();
+            next = MessageCodec.encodeTableChunk("10.0.0.1", "10.0.0.2", routes, next, seq, buffer);
+            assertTrue(buffer.remaining() <= MessageCodec.MAX_DATAGRAM);
+            JsonObject chunk = JsonParser.parseString(StandardCharsets.UTF_8.decode(buffer).toString()).getAsJsonObject();
+            assertEquals("table", chunk.get("type").getAsString());
+            assertEquals(seq, chunk.get("seq").getAsInt());
+            assertEquals(next == routes.size(), chunk.get("last").getAsBoolean());
+            JsonArray table = chunk.getAsJsonArray("msg");
+            assertEquals(new Prefix(decoded << 8, 24).networkString(), table.get(0).getAsJsonObject().get("network").getAsString());
+            decoded += table.size();
+            seq++;
+        }
+        assertEquals(routes.size(), decoded);
+        assertTrue(seq > 1);
+    }
+
+    @Test
+    void testPeekHeader() {
+        MessageHeader header = new MessageHeader();
+        ByteBuffer buffer = bytes("{\"msg\": {\"src\": \"1.1.1.1\", \"type\": \"update\"}, \"dst\": \"192.168.0.25\", \"src\": \"10.0.0.25\", \"type\": \"data\"}");
+
+        assertTrue(MessageCodec.peekHeader(buffer, header));
+        assertEquals(Message.MessageType.data, header.type);
+        assertEquals(Prefix.parseAddress("10.0.0.25"), header.src);
+        assertEquals(Prefix.parseAddress("192.168.0.25"), header.dst);
+        assertEquals(0, buffer.position());
+
+        assertFalse(MessageCodec.peekHeader(bytes("{\"type\": \"dump\", \"src\": \"10.0.0.25\", \"dst\": \"not an address\"}"), header));
+        assertEquals(Message.MessageType.dump, header.type);
+        assertFalse(header.hasDst);
+    }
+}
@@ -0,0 +1,40 @@
+package loadgen;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Load tests, which send real traffic over loopback UDP. They are left out of the default build, and run with -Pload.
+ */
+@Tag("load")
+class LoadGeneratorTest {
+
+    @Test
+    void testSyntheticWorkload() throws Exception {
+        LoadReport report = new LoadGenerator(LoadConfig.parse(new String[]{
+                "--neighbors=3", "--prefixes=100", "--messages=2000", "--rate=5000", "--update-ratio=0.05",
+                "--withdraw-ratio=0", "--drain-ms=300"})).run();
+
+        assertEquals(2000, report.messagesSent);
+        assertTrue(report.dataSent > 1800);
+        assertEquals(0, report.dropped(), report.toString());
+        assertEquals(0, report.noRoute, report.toString());
+        //A generous bound, which only a router that stalls would miss.
+        assertTrue(report.latency(99) < TimeUnit.SECONDS.toNanos(1), report.toString());
+    }
+
+    @Test
+    void testReplayScenario() throws Exception {
+        LoadReport report = new LoadGenerator(LoadConfig.parse(new String[]{
+                "--scenario=configs/1-1-simple-send.conf", "--repeat=5", "--rate=0", "--drain-ms=300"})).run();
+
+        //Each pass sends two updates, a data message each way and a dump.
+        assertEquals(25, report.messagesSent);
+        assertEquals(10, report.dataReceived, report.toString());
+        assertEquals(0, report.dropped(), report.toString());
+    }
+}
@@ -0,0 +1,41 @@
+package remote;
+
+import messages.UpdateMessage;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdjRibInTest {
+
+    private static Route route(String network, String netmask, int localpref) {
+        return new Route("10.0.0.2", Prefix.parse(network, netmask), localpref, false, List.of(1), UpdateMessage.UpdateParams.Origin.EGP);
+    }
+
+    @Test
+    void testStaleRoutes() {
+        AdjRibIn adjRibIn = new AdjRibIn("10.0.0.2");
+        Set<Prefix> changedPrefixes = new HashSet<>();
+        adjRibIn.announce(route("11.0.0.0", "255.255.255.0", 100), changedPrefixes);
+        adjRibIn.announce(route("11.0.1.0", "255.255.255.0", 100), changedPrefixes);
+        adjRibIn.announce(route("12.0.0.0", "255.0.0.0", 100), changedPrefixes);
+        adjRibIn.announce(route("13.0.0.0", "255.0.0.0", 100), changedPrefixes);
+        //The two /24s are aggregated, but each is still stale on its own.
+        assertEquals(4, adjRibIn.markStale());
+
+        assertTrue(adjRibIn.refresh(route("11.0.1.0", "255.255.255.0", 100)));
+        assertFalse(adjRibIn.refresh(route("11.0.1.0", "255.255.255.0", 100)));
+        assertFalse(adjRibIn.refresh(route("12.0.0.0", "255.0.0.0", 200)));
+        assertFalse(adjRibIn.refresh(route("14.0.0.0", "255.0.0.0", 100)));
+
+        //A changed route is announced as usual, after which it is no longer stale.
+        adjRibIn.announce(route("12.0.0.0", "255.0.0.0", 200), changedPrefixes);
+        assertEquals(Set.of(Prefix.parse("11.0.0.0", "255.255.255.0"), Prefix.parse("13.0.0.0", "255.0.0.0")),
+                new HashSet<>(adjRibIn.takeStale()));
+        assertTrue(adjRibIn.takeStale().isEmpty());
+        assertFalse(adjRibIn.refresh(route("13.0.0.0", "255.0.0.0", 100)));
+    }
+}
@@ -0,0 +1,110 @@
+package remote;
+
+import json.MessageCodec;
+import messages.Message;
+import messages.UpdateMessage;
+import messages.WithdrawMessage;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdjRibOutTest {
+    private static final Prefix PREFIX_A = Prefix.parse("11.0.0.0", "255.0.0.0");
+    private static final Prefix PREFIX_B = Prefix.parse("12.0.0.0", "255.0.0.0");
+    private static final Prefix PREFIX_C = Prefix.parse("13.0.0.0", "255.0.0.0");
+
+    private static UpdateMessage update(Prefix prefix, int asn) {
+        return new UpdateMessage("10.0.0.1", "10.0.0.2",
+                new UpdateMessage.PublicUpdateParams(prefix.networkString(), prefix.netmaskString(), List.of(asn)));
+    }
+
+    private static WithdrawMessage.WithdrawNetwork[] networks(Prefix... prefixes) {
+        WithdrawMessage.WithdrawNetwork[] networks = new WithdrawMessage.WithdrawNetwork[prefixes.length];
+        for (int i = 0; i < prefixes.length; i++) {
+            networks[i] = new WithdrawMessage.WithdrawNetwork(prefixes[i].networkString(), prefixes[i].netmaskString());
+        }
+        return networks;
+    }
+
+    private static List<Message> flushAndReceive(AdjRibOut adjRibOut, Neighbor neighbor, DatagramChannel receiver) throws Exception {
+        Outbox outbox = new Outbox(new Neighbor[]{neighbor}, new BatchMetrics("test"));
+        adjRibOut.flush(outbox);
+        assertTrue(outbox.flush());
+
+        List<Message> messages = new ArrayList<>();
+        ByteBuffer buffer = ByteBuffer.allocate(BufferPool.BUFFER_SIZE);
+        while (buffer.clear() != null && receiver.receive(buffer) != null) {
+            buffer.flip();
+            messages.add(MessageCodec.decode(buffer));
+        }
+        return messages;
+    }
+
+    @Test
+    void testCoalescesWithinWindow() throws Exception {
+        try (DatagramChannel receiver = DatagramChannel.open()) {
+            receiver.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            receiver.configureBlocking(false);
+            Neighbor neighbor = new Neighbor(0, "10.0.0.2", Relation.CUST, ((InetSocketAddress) receiver.getLocalAddress()).getPort());
+            AdjRibOut adjRibOut = new AdjRibOut(neighbor);
+
+            //A is announced twice, B is announced then withdrawn before ever being sent.
+            adjRibOut.announce(PREFIX_A, update(PREFIX_A, 1));
+            adjRibOut.announce(PREFIX_A, update(PREFIX_A, 2));
+            adjRibOut.announce(PREFIX_B, update(PREFIX_B, 1));
+            adjRibOut.withdraw(List.of(PREFIX_B), networks(PREFIX_B));
+            Thread.sleep(50);
+            List<Message> messages = flushAndReceive(adjRibOut, neighbor, receiver);
+            assertEquals(1, messages.size());
+            assertEquals(List.of(2), ((UpdateMessage.PublicUpdateParams) messages.get(0).msg).ASPath);
+            assertEquals(3, adjRibOut.getMessagesSaved());
+
+            //A was sent, so withdrawing it still has to be, merged with the withdrawal of C.
+            adjRibOut.withdraw(List.of(PREFIX_A), networks(PREFIX_A));
+            adjRibOut.withdraw(List.of(PREFIX_C), networks(PREFIX_C));
+            Thread.sleep(50);
+            messages = flushAndReceive(adjRibOut, neighbor, receiver);
+            assertEquals(1, messages.size());
+            assertEquals(2, ((WithdrawMessage) messages.get(0)).getWithdrawNetworks().length);
+            assertEquals(4, adjRibOut.getMessagesSaved());
+            assertTrue(adjRibOut.isEmpty());
+        }
+    }
+
+    @Test
+    void testSplitsLargeWithdrawals() throws Exception {
+        try (DatagramChannel receiver = DatagramChannel.open()) {
+            receiver.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            receiver.configureBlocking(false);
+            Neighbor neighbor = new Neighbor(0, "10.0.0.2", Relation.CUST, ((InetSocketAddress) receiver.getLocalAddress()).getPort());
+            AdjRibOut adjRibOut = new AdjRibOut(neighbor);
+            Prefix[] prefixes = new Prefix[1200];
+            for (int i = 0; i < prefixes.length; i++) {
+                prefixes[i] = Prefix.parse("20." + (i >> 8) + "." + (i & 0xff) + ".0", "255.255.255.0");
+            }
+
+            //One withdrawal of more networks than fit in a message is split, which saves nothing.
+            adjRibOut.withdraw(List.of(prefixes), networks(prefixes));
+            List<Message> messages = flushAndReceive(adjRibOut, neighbor, receiver);
+            assertEquals(3, messages.size());
+            assertEquals(AdjRibOut.MAX_WITHDRAW_NETWORKS, ((WithdrawMessage) messages.get(0)).getWithdrawNetworks().length);
+            assertEquals(200, ((WithdrawMessage) messages.get(2)).getWithdrawNetworks().length);
+            assertEquals(0, adjRibOut.getMessagesSaved());
+
+            //Two withdrawals of 600 networks each would have been four messages, and are merged into three.
+            adjRibOut.withdraw(List.of(prefixes).subList(0, 600), networks(Arrays.copyOfRange(prefixes, 0, 600)));
+            adjRibOut.withdraw(List.of(prefixes).subList(600, 1200), networks(Arrays.copyOfRange(prefixes, 600, 1200)));
+            messages = flushAndReceive(adjRibOut, neighbor, receiver);
+            assertEquals(3, messages.size());
+            assertEquals(1, adjRibOut.getMessagesSaved());
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package remote;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static messages.UpdateMessage.UpdateParams.Origin.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class AttributesTest {
+    @Test
+    void testIntern() {
+        Attributes attributes = Attributes.intern(100, false, List.of(3, 4), EGP);
+        assertSame(attributes, Attributes.intern(100, false, new int[]{3, 4}, EGP));
+        assertNotSame(attributes, Attributes.intern(100, false, List.of(3), EGP));
+        assertNotSame(attributes, Attributes.intern(100, false, List.of(3, 4), IGP));
+
+        Prefix prefix = Prefix.parse("12.0.0.0", "255.0.0.0");
+        Route route = new Route("10.0.0.2", prefix, 100, false, List.of(3, 4), EGP);
+        assertTrue(route.attributesEqual(new Route("10.0.0.2", Prefix.parse("13.0.0.0", "255.0.0.0"), 100, false, List.of(3, 4), EGP)));
+        assertFalse(route.attributesEqual(new Route("10.0.0.3", prefix, 100, false, List.of(3, 4), EGP)));
+    }
+
+    @Test
+    void testPrependedPath() {
+        Attributes attributes = Attributes.intern(100, false, List.of(3, 4), EGP);
+        List<Integer> path = attributes.prependedPath(1);
+        assertEquals(List.of(1, 3, 4), path);
+        assertSame(path, attributes.prependedPath(1));
+        assertEquals(List.of(2, 3, 4), attributes.prependedPath(2));
+        assertEquals(List.of(3, 4), attributes.ASPathList());
+    }
+}
@@ -0,0 +1,37 @@
+package remote;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BufferPoolTest {
+
+    @Test
+    void testReleasedBuffersAreReusedCleared() {
+        BufferPool pool = new BufferPool(1);
+        ByteBuffer buffer = pool.acquire();
+        assertTrue(buffer.isDirect());
+        assertEquals(BufferPool.BUFFER_SIZE, buffer.remaining());
+
+        buffer.put((byte) 1).flip();
+        pool.release(buffer);
+        ByteBuffer reused = pool.acquire();
+        assertSame(buffer, reused);
+        assertEquals(0, reused.position());
+        assertEquals(BufferPool.BUFFER_SIZE, reused.limit());
+    }
+
+    @Test
+    void testPoolKeepsAtMostMaxFreeBuffers() {
+        BufferPool pool = new BufferPool(1);
+        ByteBuffer first = pool.acquire();
+        ByteBuffer second = pool.acquire();
+        assertNotSame(first, second);
+
+        pool.release(first);
+        pool.release(second);
+        assertEquals(1, pool.freeCount());
+    }
+}
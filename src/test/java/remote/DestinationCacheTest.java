@@ -0,0 +1,52 @@
+package remote;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DestinationCacheTest {
+
+    @Test
+    void testHitAndMiss() {
+        RouterMetrics metrics = new RouterMetrics(0, false);
+        DestinationCache cache = new DestinationCache(16, metrics);
+
+        assertEquals(DestinationCache.MISS, cache.get(1, 0x0A000001));
+        cache.put(0x0A000001, 3);
+        cache.put(0x0B000001, DestinationCache.NO_ROUTE);
+        assertEquals(3, cache.get(1, 0x0A000001));
+        assertEquals(DestinationCache.NO_ROUTE, cache.get(1, 0x0B000001));
+        assertEquals(2, metrics.destCacheHits.sum());
+        assertEquals(1, metrics.destCacheMisses.sum());
+    }
+
+    @Test
+    void testFibChangeDropsEntries() {
+        DestinationCache cache = new DestinationCache(16, new RouterMetrics(0, false));
+        cache.get(1, 0x0A000001);
+        cache.put(0x0A000001, 3);
+
+        assertEquals(DestinationCache.MISS, cache.get(2, 0x0A000001));
+        cache.put(0x0A000001, 4);
+        assertEquals(4, cache.get(2, 0x0A000001));
+    }
+
+    @Test
+    void testEvictsWhenFull() {
+        RouterMetrics metrics = new RouterMetrics(0, false);
+        DestinationCache cache = new DestinationCache(4, metrics);
+        cache.get(1, 0);
+        for (int address = 0; address < 100; address++) {
+            cache.put(address, address % 7);
+        }
+        assertEquals(96, metrics.destCacheEvictions.sum());
+        assertEquals(99 % 7, cache.get(1, 99));
+    }
+
+    @Test
+    void testDisabled() {
+        DestinationCache cache = new DestinationCache(0, new RouterMetrics(0, false));
+        cache.put(0x0A000001, 3);
+        assertEquals(DestinationCache.MISS, cache.get(1, 0x0A000001));
+    }
+}
@@ -0,0 +1,80 @@
+package remote;
+
+import messages.UpdateMessage;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FlapDampingTest {
+    private static final Prefix PREFIX = Prefix.parse("11.0.0.0", "255.0.0.0");
+
+    private static Route route(int localpref) {
+        return new Route("10.0.0.2", PREFIX, localpref, false, List.of(1), UpdateMessage.UpdateParams.Origin.EGP);
+    }
+
+    @Test
+    void testPenaltyDecays() {
+        FlapDamping damping = new FlapDamping(1, 1000, 2000, 750, new RouterMetrics(1, false));
+        assertTrue(damping.withdraw(0, PREFIX, true, 0));
+        assertEquals(1000, damping.penalty(0, PREFIX, 0), 0.001);
+        assertEquals(500, damping.penalty(0, PREFIX, 1000), 0.001);
+        //Withdrawing a prefix that isn't announced costs nothing.
+        assertTrue(damping.withdraw(0, PREFIX, false, 1000));
+        assertEquals(250, damping.penalty(0, PREFIX, 2000), 0.001);
+    }
+
+    @Test
+    void testSuppressAndReuse() {
+        RouterMetrics metrics = new RouterMetrics(1, false);
+        FlapDamping damping = new FlapDamping(1, 1000, 2000, 750, metrics);
+        assertFalse(damping.announce(0, route(100), null, null, 0));
+        assertTrue(damping.withdraw(0, PREFIX, true, 0));
+        assertFalse(damping.announce(0, route(100), null, null, 0));
+        assertTrue(damping.withdraw(0, PREFIX, true, 0));
+        assertTrue(damping.isSuppressed(0, PREFIX));
+        assertEquals(1, metrics.dampingSuppressed.sum());
+
+        //Announcements are held back while suppressed, the last one winning, and withdrawals are absorbed.
+        assertTrue(damping.announce(0, route(100), null, null, 10));
+        assertFalse(damping.withdraw(0, PREFIX, false, 10));
+        assertTrue(damping.announce(0, route(200), null, null, 10));
+
+        //A penalty of about 3000 takes two half-lives to decay below 750.
+        List<FlapDamping.Record> reused = new ArrayList<>();
+        damping.expire(1500, reused);
+        assertTrue(reused.isEmpty());
+        assertTrue(damping.isSuppressed(0, PREFIX));
+        for (long now = 1500; now <= 3000 && reused.isEmpty(); now += 10) {
+            damping.expire(now, reused);
+        }
+        assertEquals(1, reused.size());
+        assertEquals(200, reused.get(0).pendingRoute.attributes.localpref);
+        assertFalse(damping.isSuppressed(0, PREFIX));
+        assertEquals(1, metrics.dampingReused.sum());
+    }
+
+    @Test
+    void testAttributeChangeIsPenalized() {
+        FlapDamping damping = new FlapDamping(1, 1000, 2000, 750, new RouterMetrics(1, false));
+        assertFalse(damping.announce(0, route(100), null, route(100), 0));
+        assertEquals(0, damping.penalty(0, PREFIX, 0));
+        for (int i = 0; i < 3; i++) {
+            assertFalse(damping.announce(0, route(200 + i), null, route(100 + i), 0));
+        }
+        assertEquals(1500, damping.penalty(0, PREFIX, 0), 0.001);
+        assertTrue(damping.announce(0, route(300), null, route(202), 0));
+    }
+
+    @Test
+    void testForgetsDecayedRecords() {
+        FlapDamping damping = new FlapDamping(1, 1000, 2000, 750, new RouterMetrics(1, false));
+        damping.withdraw(0, PREFIX, true, 0);
+        List<FlapDamping.Record> reused = new ArrayList<>();
+        damping.expire(10000, reused);
+        assertEquals(0, damping.penalty(0, PREFIX, 10000));
+        assertEquals(Long.MAX_VALUE, damping.nextExpiryMillis());
+    }
+}
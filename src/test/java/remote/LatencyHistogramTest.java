@@ -0,0 +1,31 @@
+package remote;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyHistogramTest {
+
+    @Test
+    void testBuckets() {
+        for (long value : new long[]{0, 1, 31, 32, 63, 64, 1000, 123456789, Long.MAX_VALUE}) {
+            long lowest = LatencyHistogram.lowestValue(LatencyHistogram.bucket(value));
+            assertTrue(lowest <= value && value - lowest <= value / 32, value + " counted from " + lowest);
+        }
+        assertTrue(LatencyHistogram.bucket(1000) < LatencyHistogram.bucket(1100));
+    }
+
+    @Test
+    void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.percentile(99));
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+        assertEquals(1000, histogram.count());
+        assertEquals(500500, histogram.mean());
+        assertEquals(500000, histogram.percentile(50), 500000 / 32);
+        assertEquals(990000, histogram.percentile(99), 990000 / 32);
+        assertEquals(1000000, histogram.percentile(100), 1000000 / 32);
+    }
+}
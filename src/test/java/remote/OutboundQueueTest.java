@@ -0,0 +1,46 @@
+package remote;
+
+import messages.HandshakeMessage;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OutboundQueueTest {
+
+    @Test
+    void testFlushSendsQueuedDatagramsInOrder() throws Exception {
+        try (DatagramChannel sender = DatagramChannel.open(); DatagramChannel receiver = DatagramChannel.open()) {
+            receiver.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            BufferPool pool = new BufferPool(4);
+            OutboundQueue queue = new OutboundQueue(pool);
+
+            //Large enough that the later datagrams spill into a second chunk.
+            ByteBuffer large = ByteBuffer.wrap("x".repeat(40000).getBytes(StandardCharsets.UTF_8));
+            queue.add(new HandshakeMessage("10.0.0.1", "10.0.0.2"));
+            queue.add(large);
+            queue.add(large);
+            assertEquals(0, large.position());
+            assertEquals(3, queue.size());
+
+            assertEquals(3, queue.flush(sender, receiver.getLocalAddress()));
+            assertTrue(queue.isEmpty());
+            assertEquals(1, pool.freeCount());
+
+            ByteBuffer received = ByteBuffer.allocate(BufferPool.BUFFER_SIZE);
+            receiver.receive(received);
+            assertEquals("{\"type\":\"handshake\",\"src\":\"10.0.0.1\",\"dst\":\"10.0.0.2\",\"msg\":{}}",
+                    new String(received.array(), 0, received.position(), StandardCharsets.UTF_8));
+            for (int i = 0; i < 2; i++) {
+                received.clear();
+                receiver.receive(received);
+                assertEquals(40000, received.position());
+            }
+        }
+    }
+}
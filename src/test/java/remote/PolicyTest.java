@@ -0,0 +1,67 @@
+package remote;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static remote.Prefix.parseAddress;
+
+class PolicyTest {
+    @TempDir
+    Path dir;
+
+    private static boolean permits(Policy policy, String network, int length, List<Integer> ASPath, Relation from, int prefixCount) {
+        int[] path = ASPath == null ? null : ASPath.stream().mapToInt(Integer::intValue).toArray();
+        return policy.permits(parseAddress(network), length, path, from, prefixCount);
+    }
+
+    @Test
+    void testDefaultExportFollowsRelationships() throws Exception {
+        PolicyConfig config = new PolicyConfig();
+        Policy toCustomer = config.exportPolicy(new Neighbor(0, "10.0.0.2", Relation.CUST, 1));
+        Policy toPeer = config.exportPolicy(new Neighbor(1, "11.0.0.2", Relation.PEER, 1));
+
+        assertTrue(toCustomer.permitsAll());
+        assertTrue(permits(toPeer, "12.0.0.0", 8, List.of(1), Relation.CUST, 0));
+        assertFalse(permits(toPeer, "12.0.0.0", 8, List.of(1), Relation.PROV, 0));
+        assertTrue(config.importPolicy(new Neighbor(2, "13.0.0.2", Relation.PROV, 1)).permitsAll());
+    }
+
+    @Test
+    void testRulesFromFile() throws Exception {
+        Path file = dir.resolve("policy.conf");
+        Files.write(file, List.of(
+                "# Comments and blank lines are ignored",
+                "",
+                "10.0.0.2 import permit prefix 192.168.1.0/24",
+                "10.0.0.2 import deny   prefix 192.168.0.0/16 le 24",
+                "*        import deny   as-path-contains 666",
+                "10.0.0.2 import deny   max-prefix 2",
+                "*        export deny   as-path-longer 2"));
+        PolicyConfig config = PolicyConfig.load(file);
+        Policy imports = config.importPolicy(new Neighbor(0, "10.0.0.2", Relation.CUST, 1));
+        Policy exports = config.exportPolicy(new Neighbor(0, "10.0.0.2", Relation.CUST, 1));
+
+        assertTrue(permits(imports, "192.168.1.0", 24, List.of(666), Relation.CUST, 5));
+        assertFalse(permits(imports, "192.168.2.0", 24, List.of(1), Relation.CUST, 1));
+        assertTrue(permits(imports, "192.168.2.0", 25, List.of(1), Relation.CUST, 1));
+        assertFalse(permits(imports, "12.0.0.0", 8, List.of(1, 666), Relation.CUST, 1));
+        assertFalse(permits(imports, "12.0.0.0", 8, List.of(1), Relation.CUST, 3));
+        assertTrue(permits(imports, "12.0.0.0", 8, List.of(1), Relation.CUST, 2));
+
+        assertFalse(permits(exports, "12.0.0.0", 8, List.of(1, 2, 3), Relation.CUST, 0));
+        assertTrue(permits(exports, "12.0.0.0", 8, null, Relation.CUST, 0));
+    }
+
+    @Test
+    void testInvalidRuleReportsLine() throws Exception {
+        Path file = dir.resolve("policy.conf");
+        Files.write(file, List.of("* export deny max-prefix 2"));
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> PolicyConfig.load(file));
+        assertTrue(e.getMessage().contains("policy.conf:1"));
+    }
+}
@@ -0,0 +1,38 @@
+package remote;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PrefixTest {
+
+    @Test
+    void testParseAndFormat() {
+        Prefix prefix = Prefix.parse("192.168.1.0", "255.255.254.0");
+        assertEquals(23, prefix.length);
+        assertEquals("192.168.0.0", prefix.networkString());
+        assertEquals("255.255.254.0", prefix.netmaskString());
+        assertEquals("0.0.0.0", Prefix.parse("0.0.0.0", "0.0.0.0").netmaskString());
+        assertEquals("255.255.255.255", Prefix.formatAddress(-1));
+    }
+
+    @Test
+    void testContains() {
+        Prefix prefix = Prefix.parse("192.168.0.0", "255.255.0.0");
+        assertTrue(prefix.contains(Prefix.parseAddress("192.168.12.25")));
+        assertFalse(prefix.contains(Prefix.parseAddress("192.169.0.1")));
+        assertTrue(prefix.contains(Prefix.parse("192.168.12.0", "255.255.255.0")));
+        assertFalse(prefix.contains(Prefix.parse("192.0.0.0", "255.0.0.0")));
+    }
+
+    @Test
+    void testAdjacentAndSupernet() {
+        Prefix first = Prefix.parse("192.168.0.0", "255.255.255.0");
+        Prefix second = Prefix.parse("192.168.1.0", "255.255.255.0");
+        assertTrue(first.adjacent(second));
+        assertTrue(second.adjacent(first));
+        assertFalse(first.adjacent(Prefix.parse("192.168.2.0", "255.255.255.0")));
+        assertEquals(Prefix.parse("192.168.0.0", "255.255.254.0"), first.supernet(second));
+        assertFalse(Prefix.parse("255.255.255.0", "255.255.255.0").adjacent(Prefix.parse("0.0.0.0", "255.255.255.0")));
+    }
+}
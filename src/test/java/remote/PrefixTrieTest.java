@@ -0,0 +1,75 @@
+package remote;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static remote.Prefix.parseAddress;
+
+class PrefixTrieTest {
+    private PrefixTrie<String> trie;
+
+    @BeforeEach
+    void setUp() {
+        trie = new PrefixTrie<>();
+        trie.put(parseAddress("192.0.0.0"), 8, "192/8");
+        trie.put(parseAddress("192.168.0.0"), 16, "192.168/16");
+        trie.put(parseAddress("192.168.12.0"), 24, "192.168.12/24");
+        trie.put(parseAddress("172.77.0.0"), 16, "172.77/16");
+    }
+
+    @Test
+    void testLongestMatch() {
+        assertEquals("192.168.12/24", trie.longestMatch(parseAddress("192.168.12.25")));
+        assertEquals("192.168/16", trie.longestMatch(parseAddress("192.168.13.25")));
+        assertEquals("192/8", trie.longestMatch(parseAddress("192.169.0.1")));
+        assertEquals("172.77/16", trie.longestMatch(parseAddress("172.77.1.1")));
+        assertNull(trie.longestMatch(parseAddress("10.0.0.1")));
+    }
+
+    @Test
+    void testDefaultRoute() {
+        trie.put(0, 0, "default");
+        assertEquals("default", trie.longestMatch(parseAddress("10.0.0.1")));
+        assertEquals("192.168.12/24", trie.longestMatch(parseAddress("192.168.12.25")));
+    }
+
+    @Test
+    void testRemove() {
+        assertEquals("192.168/16", trie.remove(parseAddress("192.168.0.0"), 16));
+        assertNull(trie.remove(parseAddress("192.168.0.0"), 16));
+        assertEquals("192/8", trie.longestMatch(parseAddress("192.168.13.25")));
+        assertEquals("192.168.12/24", trie.longestMatch(parseAddress("192.168.12.25")));
+
+        assertEquals("192.168.12/24", trie.remove(parseAddress("192.168.12.0"), 24));
+        assertEquals("192/8", trie.longestMatch(parseAddress("192.168.12.25")));
+        assertEquals(2, trie.size());
+    }
+
+    @Test
+    void testGetExactPrefix() {
+        assertEquals("192.168/16", trie.get(parseAddress("192.168.0.0"), 16));
+        assertNull(trie.get(parseAddress("192.168.0.0"), 17));
+        assertNull(trie.get(parseAddress("192.168.0.0"), 15));
+    }
+
+    @Test
+    void testSnapshotIsUnaffectedByLaterChanges() {
+        PrefixTrie<String> snapshot = trie.snapshot();
+        trie.remove(parseAddress("192.168.12.0"), 24);
+        trie.put(parseAddress("10.0.0.0"), 8, "10/8");
+        trie.put(parseAddress("192.0.0.0"), 8, "192/8 again");
+
+        assertEquals("192.168.12/24", snapshot.longestMatch(parseAddress("192.168.12.25")));
+        assertEquals("192/8", snapshot.longestMatch(parseAddress("192.169.0.1")));
+        assertNull(snapshot.longestMatch(parseAddress("10.0.0.1")));
+        assertEquals(4, snapshot.size());
+        assertEquals(4, snapshot.version());
+
+        assertEquals("10/8", trie.longestMatch(parseAddress("10.0.0.1")));
+        assertEquals("192/8 again", trie.longestMatch(parseAddress("192.169.0.1")));
+        assertEquals("192.168/16", trie.longestMatch(parseAddress("192.168.12.25")));
+        assertEquals(4, trie.size());
+        assertEquals(7, trie.version());
+    }
+}
@@ -0,0 +1,98 @@
+package remote;
+
+import messages.UpdateMessage;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RibJournalTest {
+    @TempDir
+    Path directory;
+
+    /**
+     * Records what a journal replays, one line per call.
+     */
+    private static class RecordingReplay implements RibJournal.Replay {
+        final List<String> calls = new ArrayList<>();
+
+        @Override
+        public void restore(Route route) {
+            String inside = route instanceof AggregatedRoute ? " " + ((AggregatedRoute) route).getRoutesInside() : "";
+            calls.add("restore " + route.nextHop + " " + route + inside);
+        }
+
+        @Override
+        public void announce(Route route) {
+            calls.add("announce " + route.nextHop + " " + route + " " + route.attributes.localpref);
+        }
+
+        @Override
+        public void withdraw(String neighbor, List<Prefix> prefixes) {
+            calls.add("withdraw " + neighbor + " " + prefixes);
+        }
+    }
+
+    private static Route route(String network, String netmask, List<Integer> ASPath) {
+        return new Route("10.0.0.2", Prefix.parse(network, netmask), 100, true, ASPath, UpdateMessage.UpdateParams.Origin.EGP);
+    }
+
+    private void runUntilClosed(RibJournal journal) throws Exception {
+        journal.close();
+        journal.run();
+    }
+
+    @Test
+    void testReplaysJournal() throws Exception {
+        RibJournal journal = new RibJournal(directory, 100, new RecordingReplay());
+        journal.announce(route("11.0.0.0", "255.0.0.0", List.of(1, 2)));
+        journal.commit();
+        journal.withdraw("10.0.0.2", List.of(Prefix.parse("11.0.0.0", "255.0.0.0")));
+        journal.announce(route("12.0.0.0", "255.255.0.0", List.of()));
+        journal.commit();
+        runUntilClosed(journal);
+
+        RecordingReplay replay = new RecordingReplay();
+        runUntilClosed(new RibJournal(directory, 100, replay));
+        assertEquals(List.of("announce 10.0.0.2 11.0.0.0/8 100", "withdraw 10.0.0.2 [11.0.0.0/8]",
+                "announce 10.0.0.2 12.0.0.0/16 100"), replay.calls);
+    }
+
+    @Test
+    void testSnapshotReplacesEarlierJournal() throws Exception {
+        RibJournal journal = new RibJournal(directory, 2, new RecordingReplay());
+        Route first = route("11.0.0.0", "255.255.255.0", List.of(1));
+        Route second = route("11.0.1.0", "255.255.255.0", List.of(1));
+        journal.announce(first);
+        journal.announce(second);
+        journal.commit();
+        assertTrue(journal.isSnapshotDue());
+
+        Route aggregated = new AggregatedRoute("10.0.0.2", Prefix.parse("11.0.0.0", "255.255.254.0"), first.attributes, List.of(first, second));
+        journal.snapshot(List.of(aggregated, route("12.0.0.0", "255.0.0.0", List.of())));
+        assertFalse(journal.isSnapshotDue());
+        journal.withdraw("10.0.0.2", List.of(first.prefix));
+        journal.commit();
+        runUntilClosed(journal);
+
+        RecordingReplay replay = new RecordingReplay();
+        runUntilClosed(new RibJournal(directory, 2, replay));
+        assertEquals(List.of("restore 10.0.0.2 11.0.0.0/23 [11.0.0.0/24, 11.0.1.0/24]", "restore 10.0.0.2 12.0.0.0/8",
+                "withdraw 10.0.0.2 [11.0.0.0/24]"), replay.calls);
+    }
+
+    @Test
+    void testIgnoresUncommittedBatch() throws Exception {
+        RibJournal journal = new RibJournal(directory, 100, new RecordingReplay());
+        journal.announce(route("11.0.0.0", "255.0.0.0", List.of()));
+        runUntilClosed(journal);
+
+        RecordingReplay replay = new RecordingReplay();
+        runUntilClosed(new RibJournal(directory, 100, replay));
+        assertTrue(replay.calls.isEmpty());
+    }
+}
@@ -0,0 +1,32 @@
+package remote;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static messages.UpdateMessage.UpdateParams.Origin.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class RouteTest {
+    private static final Prefix PREFIX = Prefix.parse("12.0.0.0", "255.0.0.0");
+
+    @Test
+    void testDecisionOrder() {
+        Route route = new Route("10.0.0.2", PREFIX, 100, false, List.of(3, 4), EGP);
+
+        assertTrue(Route.compareDecision(new Route("10.0.0.2", PREFIX, 150, false, List.of(3, 4), EGP), route) < 0);
+        assertTrue(Route.compareDecision(new Route("10.0.0.2", PREFIX, 100, true, List.of(3, 4), EGP), route) < 0);
+        assertTrue(Route.compareDecision(new Route("10.0.0.2", PREFIX, 100, false, List.of(3), EGP), route) < 0);
+        assertTrue(Route.compareDecision(new Route("10.0.0.2", PREFIX, 100, false, List.of(3, 4), IGP), route) < 0);
+        assertTrue(Route.compareDecision(new Route("10.0.0.2", PREFIX, 100, false, List.of(3, 4), UNK), route) > 0);
+        assertEquals(0, Route.compareDecision(new Route("10.0.0.2", PREFIX, 100, false, List.of(1, 2), EGP), route));
+    }
+
+    @Test
+    void testLowestPeerAddressComparesNumerically() {
+        Route route = new Route("10.0.0.2", PREFIX, 100, false, List.of(3), EGP);
+        //With the dots removed, 9.100.0.2 would compare as 910002 and lose to 10002.
+        assertTrue(Route.compareDecision(new Route("9.100.0.2", PREFIX, 100, false, List.of(3), EGP), route) < 0);
+        assertTrue(Route.compareDecision(new Route("192.168.0.2", PREFIX, 100, false, List.of(3), EGP), route) > 0);
+    }
+}
@@ -0,0 +1,41 @@
+package remote;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RouterConfigTest {
+
+    @Test
+    void testParseOptionsAnywhere() {
+        RouterConfig config = RouterConfig.parse(new String[]{"--metrics", "7", "5000-1.2.3.2-cust", "--receive-budget=8", "5001-4.5.6.2-peer"});
+
+        assertEquals(7, config.asn);
+        assertArrayEquals(new String[]{"5000-1.2.3.2-cust", "5001-4.5.6.2-peer"}, config.connections);
+        assertEquals(8, config.receiveBudget);
+        assertTrue(config.printMetrics);
+        assertEquals(0, RouterConfig.parse(new String[]{"7", "5000-1.2.3.2-cust", "--dest-cache=0"}).destCacheSize);
+        assertEquals("/var/rib", RouterConfig.parse(new String[]{"7", "5000-1.2.3.2-cust", "--state-dir=/var/rib"}).stateDir);
+    }
+
+    @Test
+    void testRejectsUnknownOptionsAndMissingConnections() {
+        assertThrows(IllegalArgumentException.class, () -> RouterConfig.parse(new String[]{"7", "5000-1.2.3.2-cust", "--unknown=1"}));
+        assertThrows(IllegalArgumentException.class, () -> RouterConfig.parse(new String[]{"7"}));
+        assertThrows(IllegalArgumentException.class, () -> RouterConfig.parse(new String[]{"7", "5000-1.2.3.2-cust", "--dest-cache=-1"}));
+        assertThrows(IllegalArgumentException.class, () -> RouterConfig.parse(new String[]{"7", "5000-1.2.3.2-cust", "--damping", "--damping-reuse=3000"}));
+    }
+
+    @Test
+    void testDampingThresholdsInEitherOrder() {
+        for (String[] args : new String[][]{
+                {"7", "5000-1.2.3.2-cust", "--damping-suppress=500", "--damping-reuse=100"},
+                {"7", "5000-1.2.3.2-cust", "--damping-reuse=100", "--damping-suppress=500"}}) {
+            RouterConfig config = RouterConfig.parse(args);
+            assertEquals(500, config.dampingSuppress);
+            assertEquals(100, config.dampingReuse);
+        }
+        assertThrows(IllegalArgumentException.class, () -> RouterConfig.parse(new String[]{"7", "5000-1.2.3.2-cust", "--damping-suppress=500", "--damping-reuse=600"}));
+        assertThrows(IllegalArgumentException.class, () -> RouterConfig.parse(new String[]{"7", "5000-1.2.3.2-cust", "--damping-reuse=600", "--damping-suppress=500"}));
+    }
+}
@@ -0,0 +1,77 @@
+package remote;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RouterTest {
+
+    private static ByteBuffer message(String type, String src, String dst, String msg) {
+        return ByteBuffer.wrap(("{\"type\": \"" + type + "\", \"src\": \"" + src + "\", \"dst\": \"" + dst + "\", \"msg\": " + msg + "}")
+                .getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static DatagramChannel bindNeighbor() throws Exception {
+        return DatagramChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    }
+
+    private static int port(DatagramChannel channel) throws Exception {
+        return ((InetSocketAddress) channel.getLocalAddress()).getPort();
+    }
+
+    private static JsonObject metrics(Router router) {
+        return JsonParser.parseString(router.getMetricsJson()).getAsJsonObject();
+    }
+
+    @Test
+    void testSweepOfManyStaleRoutesIsSplit() throws Exception {
+        int prefixes = 3000;
+        try (DatagramChannel customer = bindNeighbor(); DatagramChannel peer = bindNeighbor()) {
+            Router router = new Router(RouterConfig.parse(new String[]{"1", port(customer) + "-192.168.0.2-cust",
+                    port(peer) + "-172.168.0.2-peer", "--mrai-ms=0"}));
+            //Every other /24, so that no two routes are aggregated.
+            for (int i = 0; i < prefixes; i++) {
+                router.handleMessage(message("update", "192.168.0.2", "192.168.0.1", "{\"network\": \"10." + i / 128 + "."
+                        + i % 128 * 2 + ".0\", \"netmask\": \"255.255.255.0\", \"localpref\": 100, \"ASPath\": [2],"
+                        + " \"origin\": \"EGP\", \"selfOrigin\": false}"));
+            }
+            router.handleMessage(message("handshake", "192.168.0.2", "192.168.0.1", "{}"));
+            //Nothing is announced again, so the end-of-RIB withdraws every route at once.
+            router.handleMessage(message("eor", "192.168.0.2", "192.168.0.1", "{}"));
+            assertEquals(prefixes, router.metrics.staleSwept.sum());
+
+            //Running the router publishes the FIB and sends what the messages queued.
+            Thread thread = new Thread(() -> {
+                try {
+                    router.run();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            });
+            thread.start();
+            //The handshake, an update for each prefix, and the withdrawal in messages of at most 500 networks.
+            long expected = 1 + prefixes + (prefixes + AdjRibOut.MAX_WITHDRAW_NETWORKS - 1) / AdjRibOut.MAX_WITHDRAW_NETWORKS;
+            long deadline = System.nanoTime() + 10_000_000_000L;
+            JsonObject metrics = metrics(router);
+            while (metrics.getAsJsonObject("neighbors").getAsJsonObject("172.168.0.2").get("tx").getAsLong() < expected
+                    && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+                metrics = metrics(router);
+            }
+            router.stop();
+            thread.join();
+
+            assertEquals(expected, metrics.getAsJsonObject("neighbors").getAsJsonObject("172.168.0.2").get("tx").getAsLong());
+            assertEquals(0, metrics.get("fibPrefixes").getAsInt());
+            assertNull(router.getBestRoute(Prefix.parseAddress("10.0.0.1")));
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package remote;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimerWheelTest {
+
+    @Test
+    void testExpiresInOrder() {
+        TimerWheel<String> wheel = new TimerWheel<>(10);
+        wheel.schedule("b", 25);
+        wheel.schedule("a", 12);
+        wheel.schedule("c", 100);
+        assertEquals(3, wheel.size());
+
+        List<String> expired = new ArrayList<>();
+        wheel.expire(15, expired);
+        assertTrue(expired.isEmpty());
+        wheel.expire(30, expired);
+        assertEquals(List.of("a", "b"), expired);
+        assertEquals(100, wheel.nextExpiryMillis());
+        wheel.expire(100, expired);
+        assertEquals(List.of("a", "b", "c"), expired);
+        assertEquals(Long.MAX_VALUE, wheel.nextExpiryMillis());
+    }
+
+    @Test
+    void testDeadlineBeyondOneTurn() {
+        TimerWheel<String> wheel = new TimerWheel<>(1);
+        wheel.schedule("far", 1024 + 5);
+        wheel.schedule("near", 5);
+
+        List<String> expired = new ArrayList<>();
+        wheel.expire(5, expired);
+        assertEquals(List.of("near"), expired);
+        wheel.expire(1000, expired);
+        assertEquals(List.of("near"), expired);
+        wheel.expire(1029, expired);
+        assertEquals(List.of("near", "far"), expired);
+    }
+
+    @Test
+    void testNextExpiryIsEarliestDeadline() {
+        TimerWheel<String> wheel = new TimerWheel<>(1);
+        wheel.schedule("near", 5);
+        wheel.schedule("far", 5000);
+        wheel.schedule("farther", 4000 + 1024);
+        assertEquals(5, wheel.nextExpiryMillis());
+
+        List<String> expired = new ArrayList<>();
+        wheel.expire(5, expired);
+        assertEquals(List.of("near"), expired);
+        //Nothing is due for several turns of the wheel, so there is no reason to wake up every tick until then.
+        assertEquals(5000, wheel.nextExpiryMillis());
+        wheel.expire(4999, expired);
+        assertEquals(List.of("near"), expired);
+        wheel.expire(5000, expired);
+        assertEquals(List.of("near", "far"), expired);
+        assertEquals(4000 + 1024, wheel.nextExpiryMillis());
+        wheel.expire(4000 + 1024, expired);
+        assertEquals(List.of("near", "far", "farther"), expired);
+        assertEquals(Long.MAX_VALUE, wheel.nextExpiryMillis());
+    }
+
+    @Test
+    void testClockStartingFarFromZero() {
+        for (long start : new long[]{5_000_000_000L, -5_000_000_000L}) {
+            //Walking every tick from 0 would take billions of steps.
+            assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+                TimerWheel<String> wheel = new TimerWheel<>(1);
+                wheel.schedule("b", start + 20);
+                wheel.schedule("a", start + 10);
+                assertEquals(start + 10, wheel.nextExpiryMillis());
+
+                List<String> expired = new ArrayList<>();
+                wheel.expire(start + 9, expired);
+                assertTrue(expired.isEmpty());
+                wheel.expire(start + 10, expired);
+                assertEquals(List.of("a"), expired);
+                wheel.expire(start + 20, expired);
+                assertEquals(List.of("a", "b"), expired);
+
+                wheel.schedule("c", start + 1500);
+                assertEquals(start + 1500, wheel.nextExpiryMillis());
+                wheel.expire(start + 1500, expired);
+                assertEquals(List.of("a", "b", "c"), expired);
+            });
+        }
+    }
+
+    @Test
+    void testPastDeadlineExpiresNextTick() {
+        TimerWheel<String> wheel = new TimerWheel<>(10);
+        List<String> expired = new ArrayList<>();
+        wheel.expire(500, expired);
+        wheel.schedule("late", 100);
+        wheel.expire(509, expired);
+        assertTrue(expired.isEmpty());
+        wheel.expire(510, expired);
+        assertEquals(List.of("late"), expired);
+    }
+}